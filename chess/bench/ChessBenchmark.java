@@ -0,0 +1,247 @@
+package puzzles.chess.bench;
+
+import puzzles.chess.model.ChessConfig;
+import puzzles.chess.model.ChessModel;
+import puzzles.chess.model.ChessOrdering;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.DepthFirstSolver;
+import puzzles.common.solver.HistoryOrdering;
+import puzzles.common.solver.MoveOrdering;
+import puzzles.common.solver.Solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Micro benchmarks for move generation, hashing, the BFS solver, the DFS solver with each
+ * move ordering and hints.
+ * <p>
+ * The JMH benchmarks in jmh/ are the ones to trust, this harness is a fallback for when
+ * JMH is not on hand and the only place the DFS move orderings are compared.
+ * <p>
+ * Each benchmark is run for a few warmup iterations that are thrown away, then for
+ * measured iterations of a fixed length. It reports the average time per operation and
+ * the bytes allocated per operation and per second by the benchmark thread, the same
+ * numbers JMH prints as avgt and gc.alloc.rate.norm / gc.alloc.rate.
+ * Results of every operation are folded into a sink so the JIT can not drop the work.
+ * The DFS benchmarks time the search to the first solution and also print the configs
+ * each ordering expands to find it.
+ * <p>
+ * Usage: java ChessBenchmark [data directory] [name filter]
+ *
+ * @author Nick Creeley
+ */
+public class ChessBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    /**
+     * Folded results of every operation, read once at the end
+     */
+    private static long sink;
+
+    /**
+     * Move orderings compared by the DFS benchmarks, natural is the order of forEachNeighbor
+     */
+    private static final Map<String, Supplier<MoveOrdering>> ORDERINGS = new LinkedHashMap<>();
+
+    static {
+        ORDERINGS.put("natural", () -> null);
+        ORDERINGS.put("isolated", ChessOrdering::isolatedFirst);
+        ORDERINGS.put("mobile", ChessOrdering::keepMobile);
+        ORDERINGS.put("combined", ChessOrdering::combined);
+        ORDERINGS.put("history", HistoryOrdering::new);
+    }
+
+    /**
+     * One operation being measured
+     */
+    @FunctionalInterface
+    private interface Operation {
+        /**
+         * Runs the operation once
+         *
+         * @return a value that depends on the work done
+         * @throws IOException if a puzzle can not be read
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * The result of one benchmark
+     *
+     * @param name         name of the benchmark
+     * @param nanosPerOp   average time of one operation
+     * @param errorNanos   standard deviation of the time over the measured iterations
+     * @param bytesPerOp   bytes allocated by one operation
+     * @param bytesPerSec  bytes allocated per second
+     */
+    private record Result(String name, double nanosPerOp, double errorNanos, double bytesPerOp, double bytesPerSec) {
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %14.1f +- %10.1f ns/op %14.1f B/op %10.1f MB/s",
+                    name, nanosPerOp, errorNanos, bytesPerOp, bytesPerSec / (1024 * 1024));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        String directory = args.length > 0 ? args[0] : "data" + File.separator + "chess";
+
+        String filter = args.length > 1 ? args[1] : "";
+
+        File[] files = new File(directory).listFiles((dir, name) -> name.startsWith("chess-") && name.endsWith(".txt"));
+
+        if (files == null || files.length == 0) {
+            System.out.println("No puzzles in " + directory);
+            return;
+        }
+
+        Arrays.sort(files);
+
+        System.out.printf("%-40s %30s %19s %13s%n", "Benchmark", "Time", "Alloc/op", "Alloc rate");
+
+        for (File file : files) {
+
+            String puzzle = file.getName().substring(0, file.getName().length() - ".txt".length());
+            String path = file.getPath();
+
+            ChessConfig config = new ChessConfig(path);
+            ChessConfig copy = new ChessConfig(path);
+
+            run(puzzle + ".getNeighbors", filter, () -> config.getNeighbors().size());
+
+            run(puzzle + ".forEachNeighbor", filter, () -> {
+                long[] moves = {0};
+                config.forEachNeighbor(move -> {
+                    moves[0] += move;
+                    return true;
+                });
+                return moves[0];
+            });
+
+            run(puzzle + ".hashCode", filter, config::hashCode);
+
+            run(puzzle + ".equals", filter, () -> config.equals(copy) ? 1 : 0);
+
+            run(puzzle + ".solve", filter, () -> {
+                Solver solver = new Solver(new ChessConfig(path));
+                solver.solve(false);
+                Configuration next = solver.getNextStep();
+                return next == null ? 0 : next.hashCode();
+            });
+
+            for (Map.Entry<String, Supplier<MoveOrdering>> ordering : ORDERINGS.entrySet()) {
+
+                String name = puzzle + ".dfs." + ordering.getKey();
+
+                Operation solve = () -> {
+                    DepthFirstSolver solver = new DepthFirstSolver(new ChessConfig(path), ordering.getValue().get());
+                    return solver.solve(false).getNodesExpanded();
+                };
+
+                if (run(name, filter, solve)) {
+                    System.out.printf("%-40s %14d expanded%n", name, solve.run());
+                }
+            }
+
+            run(puzzle + ".hint", filter, () -> {
+                ChessModel model = new ChessModel(path);
+                model.hint();
+                return model.getPiece(0, 0);
+            });
+        }
+
+        System.out.println("sink: " + sink);
+    }
+
+    /**
+     * Runs one benchmark and prints its result, unless its name does not contain the filter
+     *
+     * @return true if the benchmark was run
+     */
+    private static boolean run(String name, String filter, Operation operation) throws IOException {
+
+        if (!name.contains(filter)) {
+            return false;
+        }
+
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            iterate(operation);
+        }
+
+        List<double[]> iterations = new ArrayList<>();
+
+        for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+            iterations.add(iterate(operation));
+        }
+
+        double nanos = 0;
+        double operations = 0;
+        double bytes = 0;
+
+        for (double[] iteration : iterations) {
+            nanos += iteration[0];
+            operations += iteration[1];
+            bytes += iteration[2];
+        }
+
+        double mean = nanos / operations;
+        double variance = 0;
+
+        for (double[] iteration : iterations) {
+            double perOp = iteration[0] / iteration[1];
+            variance += (perOp - mean) * (perOp - mean);
+        }
+
+        double error = Math.sqrt(variance / iterations.size());
+
+        System.out.println(new Result(name, mean, error, bytes / operations, bytes / (nanos / 1e9)));
+
+        return true;
+    }
+
+    /**
+     * Runs an operation over and over for one iteration
+     *
+     * @return the time taken, the number of operations and the bytes allocated
+     */
+    private static double[] iterate(Operation operation) throws IOException {
+
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = 0;
+        long elapsed;
+
+        do {
+            sink += operation.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+
+        return new double[]{elapsed, operations, allocatedBytes() - startBytes};
+    }
+
+    /**
+     * Gets the bytes allocated so far by this thread, or 0 if the JVM can not tell
+     */
+    private static long allocatedBytes() {
+
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
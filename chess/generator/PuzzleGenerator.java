@@ -0,0 +1,365 @@
+package puzzles.chess.generator;
+
+import puzzles.chess.model.BoardGeometry;
+import puzzles.chess.model.ChessConfig;
+import puzzles.chess.tablebase.Tablebase;
+import puzzles.common.solver.SolvabilityMemo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Makes random chess puzzles that are always solvable.
+ * <p>
+ * A puzzle is built backwards from its goal, a single piece on a random square. Captures
+ * are taken back one at a time with {@link ChessConfig#forEachUncapture}, each time putting
+ * back a piece drawn from the piece mix, until the board has the pieces asked for. Playing
+ * the captures forward again solves the board, so no search is needed to know it is solvable.
+ * <p>
+ * The difficulty of a board is the share of captures along that solution that lose the
+ * puzzle, checked with a {@link SolvabilityMemo} (and a tablebase if there is one for the
+ * size). Boards outside the difficulty asked for are thrown away and made again.
+ * <p>
+ * Puzzles are made in parallel, each with its own random numbers split from the seed,
+ * and written in the text format of the files in data/chess.
+ * <p>
+ * Usage: java PuzzleGenerator [-threads n] [-mix pieces] [-difficulty easy | medium | hard]
+ * [-seed n] rows cols pieces count directory
+ *
+ * @author Nick Creeley
+ */
+public class PuzzleGenerator {
+
+    /**
+     * Share of losing captures each difficulty accepts, from inclusive to exclusive
+     */
+    public enum Difficulty {
+        ANY(0.0, 1.1), EASY(0.0, 0.3), MEDIUM(0.3, 0.6), HARD(0.6, 1.1);
+
+        private final double low;
+
+        private final double high;
+
+        Difficulty(double low, double high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        boolean accepts(double score) {
+            return score >= low && score < high;
+        }
+
+        double distance(double score) {
+            return score < low ? low - score : score >= high ? score - high : 0.0;
+        }
+    }
+
+    /**
+     * Boards made for one puzzle before the closest one is kept
+     */
+    private static final int MAX_ATTEMPTS = 200;
+
+    /**
+     * Boards a thread's memo remembers before it is cleared
+     */
+    private static final int MEMO_LIMIT = 1 << 20;
+
+    private final BoardGeometry geometry;
+
+    private final int pieces;
+
+    private final char[] mix;
+
+    private final Difficulty difficulty;
+
+    /**
+     * Solvability memo of each thread, boards of the same size share what they find
+     */
+    private final ThreadLocal<SolvabilityMemo> memos;
+
+    /**
+     * Creates a generator
+     *
+     * @param rows       rows of the board
+     * @param cols       columns of the board
+     * @param pieces     pieces on each puzzle
+     * @param mix        the pieces to draw from, a piece listed twice is drawn twice as often
+     * @param difficulty the difficulty to keep
+     */
+    public PuzzleGenerator(int rows, int cols, int pieces, String mix, Difficulty difficulty) {
+
+        if (pieces < 1 || pieces > rows * cols) {
+            throw new IllegalArgumentException("A " + rows + "x" + cols + " board can not hold " + pieces + " pieces");
+        }
+
+        this.mix = mix.toCharArray();
+
+        for (char piece : this.mix) {
+            if (piece == ChessConfig.empty) {
+                throw new IllegalArgumentException("Unknown piece: " + piece);
+            }
+            ChessConfig.pieceCode(piece);
+        }
+
+        this.geometry = BoardGeometry.of(rows, cols);
+        this.pieces = pieces;
+        this.difficulty = difficulty;
+
+        Tablebase tablebase = Tablebase.forBoard(rows, cols);
+
+        this.memos = ThreadLocal.withInitial(() -> {
+            SolvabilityMemo memo = new SolvabilityMemo();
+            memo.setTable(tablebase);
+            return memo;
+        });
+    }
+
+    /**
+     * Makes one puzzle
+     *
+     * @param random the random numbers to use
+     * @return a solvable board with the pieces asked for
+     */
+    public ChessConfig generate(SplittableRandom random) {
+
+        ChessConfig closest = null;
+
+        double closestDistance = Double.MAX_VALUE;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+
+            List<Integer> captures = new ArrayList<>();
+
+            ChessConfig board = walkBack(random, captures);
+
+            if (board == null) {
+                continue;
+            }
+
+            double score = score(board, captures);
+
+            if (difficulty.accepts(score)) {
+                return board;
+            }
+
+            if (difficulty.distance(score) < closestDistance) {
+                closest = board;
+                closestDistance = difficulty.distance(score);
+            }
+        }
+
+        if (closest == null) {
+            throw new IllegalStateException("Could not place " + pieces + " pieces on a " + geometry + " board");
+        }
+
+        return closest;
+    }
+
+    /**
+     * Takes captures back from a random single piece until the board is full
+     *
+     * @param captures receives the captures taken back, last capture of the solution first
+     * @return the board, or null if it ran out of captures to take back
+     */
+    private ChessConfig walkBack(SplittableRandom random, List<Integer> captures) {
+
+        long[] packed = new long[geometry.getPackedLength()];
+
+        int square = random.nextInt(geometry.getSquares());
+
+        packed[square / ChessConfig.SQUARES_PER_WORD] = (long) ChessConfig.pieceCode(draw(random))
+                << (square % ChessConfig.SQUARES_PER_WORD) * ChessConfig.BITS_PER_SQUARE;
+
+        ChessConfig board = new ChessConfig(geometry, packed, 0);
+
+        for (int count = 1; count < pieces; count++) {
+
+            //pick one capture evenly without keeping them all, the kth replaces the pick 1 in k times
+
+            int[] seen = {0, 0};
+
+            board.forEachUncapture(move -> {
+                if (random.nextInt(++seen[0]) == 0) {
+                    seen[1] = move;
+                }
+                return true;
+            });
+
+            if (seen[0] == 0) {
+                return null;
+            }
+
+            int move = seen[1];
+
+            board.uncapture(move, draw(random));
+            captures.add(move);
+        }
+
+        return new ChessConfig(geometry, board.pack(), 0);
+    }
+
+    /**
+     * Gets the share of captures along the solution that make the puzzle unsolvable
+     *
+     * @param board    the puzzle
+     * @param captures the captures taken back to make it
+     * @return 0 if every capture keeps it solvable, up to 1 if only the solution does
+     */
+    private double score(ChessConfig board, List<Integer> captures) {
+
+        SolvabilityMemo memo = memos.get();
+
+        if (memo.size() > MEMO_LIMIT) {
+            memo.clear();
+        }
+
+        ChessConfig step = new ChessConfig(geometry, board.pack(), 0);
+
+        int total = 0;
+
+        int losing = 0;
+
+        for (int index = captures.size() - 1; index >= 0; index--) {
+
+            List<Integer> moves = new ArrayList<>();
+
+            step.forEachNeighbor(move -> moves.add(move));
+
+            for (int move : moves) {
+                total++;
+                if (!memo.isSolvableAfter(step, move)) {
+                    losing++;
+                }
+            }
+
+            step.makeMove(captures.get(index));
+        }
+
+        return total == 0 ? 0.0 : (double) losing / total;
+    }
+
+    /**
+     * Draws a piece from the mix
+     */
+    private char draw(SplittableRandom random) {
+        return mix[random.nextInt(mix.length)];
+    }
+
+    /**
+     * Writes a board in the puzzle file format
+     *
+     * @param board the board
+     * @param file  the file
+     * @throws IOException if the file can not be written
+     */
+    public static void write(ChessConfig board, Path file) throws IOException {
+
+        try (Writer out = Files.newBufferedWriter(file)) {
+
+            out.write(board.getMaxRow() + " " + board.getMaxCol());
+
+            for (int row = 0; row < board.getMaxRow(); row++) {
+
+                out.write(System.lineSeparator());
+
+                for (int col = 0; col < board.getMaxCol(); col++) {
+                    if (col > 0) {
+                        out.write(' ');
+                    }
+                    out.write(board.getPiece(row, col));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        String mix = "BRQNKP";
+
+        Difficulty difficulty = Difficulty.ANY;
+
+        long seed = System.nanoTime();
+
+        List<String> rest = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-mix") && i + 1 < args.length) {
+                mix = args[++i];
+            } else if (args[i].equals("-difficulty") && i + 1 < args.length) {
+                difficulty = Difficulty.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                rest.add(args[i]);
+            }
+        }
+
+        if (rest.size() != 5) {
+            System.out.println("Usage: java PuzzleGenerator [-threads n] [-mix pieces] "
+                    + "[-difficulty easy | medium | hard] [-seed n] rows cols pieces count directory");
+            return;
+        }
+
+        PuzzleGenerator generator = new PuzzleGenerator(Integer.parseInt(rest.get(0)), Integer.parseInt(rest.get(1)),
+                Integer.parseInt(rest.get(2)), mix, difficulty);
+
+        int count = Integer.parseInt(rest.get(3));
+
+        Path directory = Paths.get(rest.get(4));
+
+        Files.createDirectories(directory);
+
+        SplittableRandom random = new SplittableRandom(seed);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            List<Future<?>> puzzles = new ArrayList<>();
+
+            for (int index = 0; index < count; index++) {
+
+                SplittableRandom own = random.split();
+
+                Path file = directory.resolve("chess-gen-" + index + ".txt");
+
+                puzzles.add(pool.submit(() -> {
+                    try {
+                        write(generator.generate(own), file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+
+            for (Future<?> puzzle : puzzles) {
+                puzzle.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Wrote " + count + " puzzles to " + directory + " in " + millis + " ms ("
+                + count * 60_000L / millis + " per minute, seed " + seed + ")");
+    }
+}
@@ -1,10 +1,15 @@
 package puzzles.chess.gui;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
@@ -12,14 +17,22 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import puzzles.chess.model.ChessConfig;
 import puzzles.common.Coordinates;
 import puzzles.common.Observer;
 import puzzles.chess.model.ChessModel;
+import puzzles.chess.model.SolvabilityCheck;
+import puzzles.common.solver.Solver;
+import puzzles.common.solver.SolverStats;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -46,6 +59,36 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
     private Label gameStatus;
 
+    /**
+     * Shows if the puzzle can still be solved
+     */
+    private Label solvableStatus;
+
+    /**
+     * Runs hint solves and solvability checks off the JavaFX application thread
+     */
+    private final ExecutorService hintExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * How often the progress of a running hint is shown
+     */
+    private final static Duration HINT_POLL = Duration.millis(100);
+
+    private ProgressIndicator hintProgress;
+
+    private Button cancel;
+
+    private Timeline hintPolling;
+
+    /**
+     * Solver of the hint that is running, null if there is none
+     */
+    private Solver runningHint;
+
 
     /**
      * The resources directory is located directly underneath the gui package
@@ -74,6 +117,16 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
     private static final Background DARK =
             new Background(new BackgroundFill(Color.MIDNIGHTBLUE, null, null));
 
+    /**
+     * backgrounds for the captures of the selected piece, safe ones keep the puzzle solvable
+     */
+    private static final Background SAFE =
+            new Background(new BackgroundFill(Color.LIMEGREEN, null, null));
+    private static final Background UNSAFE =
+            new Background(new BackgroundFill(Color.ORANGERED, null, null));
+    private static final Background CHECKING =
+            new Background(new BackgroundFill(Color.GOLD, null, null));
+
 
     @Override
     public void init() throws IOException {
@@ -89,6 +142,10 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
         gameStatus.setFont(Font.font(FONT_SIZE));
 
+        this.solvableStatus = new Label();
+
+        solvableStatus.setFont(Font.font(FONT_SIZE));
+
         model.addObserver(this);
 
     }
@@ -142,7 +199,15 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
                         case ChessConfig.rook -> button.setGraphic(new ImageView(rook));
                     }
 
-                    if ((row % 2 == col % 2)) {
+                    Coordinates square = new Coordinates(row, col);
+
+                    Set<Coordinates> safeCaptures = model.getSafeCaptures();
+
+                    if (safeCaptures != null && safeCaptures.contains(square)) {
+                        button.setBackground(SAFE);
+                    } else if (model.getCaptures().contains(square)) {
+                        button.setBackground(safeCaptures == null ? CHECKING : UNSAFE);
+                    } else if ((row % 2 == col % 2)) {
                         button.setBackground(LIGHT);
                     } else {
                         button.setBackground(DARK);
@@ -184,7 +249,12 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
         HBox topBox = new HBox();
 
-        topBox.getChildren().add(gameStatus);
+        updateSolvable();
+
+        startCheck();
+
+        topBox.getChildren().addAll(gameStatus, solvableStatus);
+        topBox.setSpacing(FONT_SIZE);
         topBox.setAlignment(Pos.CENTER);
 
         HBox bottom = new HBox();
@@ -227,7 +297,18 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
         Button hint = new Button("Hint");
         hint.setFont(Font.font(FONT_SIZE));
-        hint.setOnAction(event -> model.hint());
+        hint.setOnAction(event -> startHint());
+
+        //cancels a hint that is still solving
+
+        cancel = new Button("Cancel");
+        cancel.setFont(Font.font(FONT_SIZE));
+        cancel.setDisable(true);
+        cancel.setOnAction(event -> model.cancelHint());
+
+        hintProgress = new ProgressIndicator();
+        hintProgress.setMaxSize(FONT_SIZE * 2, FONT_SIZE * 2);
+        hintProgress.setVisible(false);
 
         bottom.getChildren().add(reset);
 
@@ -235,6 +316,10 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
         bottom.getChildren().add(hint);
 
+        bottom.getChildren().add(cancel);
+
+        bottom.getChildren().add(hintProgress);
+
         bottom.setAlignment(Pos.CENTER);
 
         bottom.setSpacing(30);
@@ -250,6 +335,102 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
         stage.show();
     }
 
+    /**
+     * Runs a hint on the hint thread and shows its progress until it is done.
+     * The step is taken on the JavaFX application thread once the solve finishes.
+     */
+    private void startHint() {
+
+        if (runningHint != null) {
+            return;
+        }
+
+        Solver solver = model.hintSolver();
+
+        if (solver == null) {
+            model.finishHint(null);
+            return;
+        }
+
+        runningHint = solver;
+
+        hintProgress.setVisible(true);
+        cancel.setDisable(false);
+
+        hintPolling = new Timeline(new KeyFrame(HINT_POLL, event -> showProgress(solver)));
+        hintPolling.setCycleCount(Animation.INDEFINITE);
+        hintPolling.play();
+
+        hintExecutor.submit(() -> {
+            try {
+                solver.solve(false);
+
+                Platform.runLater(() -> {
+                    endHint(solver);
+                    model.finishHint(solver);
+                });
+
+            } catch (CancellationException e) {
+                //cancelled by the user, a load or a reset
+
+                Platform.runLater(() -> {
+                    endHint(solver);
+                    gameStatus.setText("Hint cancelled");
+                    startCheck();
+                });
+
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+
+                Platform.runLater(() -> {
+                    model.cancelHint();
+                    endHint(solver);
+                    gameStatus.setText("Hint failed: " + e);
+                    startCheck();
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows how far a running hint has searched
+     *
+     * @param solver solver of the hint
+     */
+    private void showProgress(Solver solver) {
+
+        SolverStats stats = solver.getStats();
+
+        if (stats != null) {
+            gameStatus.setText("Searching... " + stats.getVisitedSize() + " configs");
+        }
+    }
+
+    /**
+     * Hides the progress of a hint that has finished or been cancelled
+     *
+     * @param solver solver of the hint
+     */
+    private void endHint(Solver solver) {
+
+        if (runningHint == solver) {
+            runningHint = null;
+            hintPolling.stop();
+            hintProgress.setVisible(false);
+            cancel.setDisable(true);
+        }
+    }
+
+    @Override
+    public void stop() {
+
+        model.cancelHint();
+
+        model.cancelCheck();
+
+        hintExecutor.shutdownNow();
+    }
+
     @Override
     public void update(ChessModel chessModel, String msg) {
 
@@ -259,6 +440,62 @@ public class ChessGUI extends Application implements Observer<ChessModel, String
 
         this.gameStatus.setText(msg);
 
+        updateSolvable();
+
+        startCheck();
+
+    }
+
+    /**
+     * Runs the solvability check of the board on the hint thread, then shows what it found
+     * on the JavaFX application thread unless the board has changed since
+     */
+    private void startCheck() {
+
+        SolvabilityCheck check = model.solvabilityCheck();
+
+        if (check == null) {
+            return;
+        }
+
+        hintExecutor.submit(() -> {
+            try {
+                check.run();
+
+                Platform.runLater(() -> {
+                    if (model.finishCheck(check)) {
+                        updateBoard();
+                        updateSolvable();
+                    }
+                });
+
+            } catch (CancellationException e) {
+                //the board changed, the check of the new board replaces it
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+
+                Platform.runLater(() -> gameStatus.setText("Solvability check failed: " + e));
+            }
+        });
+    }
+
+    /**
+     * Shows if the puzzle can still be solved from the current board
+     */
+    private void updateSolvable() {
+
+        Boolean solvable = model.getSolvable();
+
+        if (solvable == null) {
+            solvableStatus.setText("Checking...");
+            solvableStatus.setTextFill(Color.GRAY);
+        } else if (solvable) {
+            solvableStatus.setText("Solvable");
+            solvableStatus.setTextFill(Color.GREEN);
+        } else {
+            solvableStatus.setText("Unsolvable");
+            solvableStatus.setTextFill(Color.RED);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,376 @@
+package puzzles.chess.model;
+
+import puzzles.common.solver.Solver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary records of boards, solutions and batches of states, read and written on
+ * {@link ByteBuffer}s.
+ * <p>
+ * Every record starts with an 8 byte header: the bytes 'S' 'C' 'B' 'F', the version,
+ * the kind of record, flags and a reserved zero byte. Bit 0 of the flags is set when the
+ * rest of the record is little endian, records are written in the order of the buffer
+ * and read in the order they were written. The header is followed by the rows and columns
+ * as unsigned shorts, then the body:
+ * <ul>
+ * <li>a board is its packed squares, {@link BoardGeometry#getPackedLength()} longs</li>
+ * <li>a solution is the packed start board, the number of moves as an int, then each
+ * move as an int made by {@link ChessConfig#move(int, int)}</li>
+ * <li>a batch of states is the number of states as an int, then the packed squares of
+ * each state</li>
+ * </ul>
+ *
+ * @author Nick Creeley
+ */
+public final class BinaryFormat {
+
+    /**
+     * Version of the records written
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Kinds of record
+     */
+    public static final int BOARD = 1, SOLUTION = 2, STATES = 3;
+
+    /**
+     * Bytes of the header and the geometry
+     */
+    public static final int HEADER_BYTES = 12;
+
+    private static final byte[] MAGIC = {'S', 'C', 'B', 'F'};
+
+    private static final int LITTLE_ENDIAN = 1;
+
+    /**
+     * Largest piece code, see {@link ChessConfig#pieceForCode(int)}
+     */
+    private static final int MAX_CODE = 6;
+
+    /**
+     * A solution read back, the start board and the captures that solve it
+     *
+     * @param start the start board
+     * @param moves the captures in order
+     */
+    public record Solution(ChessConfig start, int[] moves) {
+
+        /**
+         * Plays the moves from the start
+         *
+         * @return every board of the solution, the start first
+         */
+        public List<ChessConfig> path() {
+
+            List<ChessConfig> path = new ArrayList<>();
+
+            ChessConfig current = start;
+            path.add(current);
+
+            for (int move : moves) {
+                current = current.applyMove(move);
+                path.add(current);
+            }
+
+            return path;
+        }
+    }
+
+    /**
+     * A batch of states read back, packed one after another
+     *
+     * @param geometry size of the boards
+     * @param packed   the packed boards
+     * @param count    number of boards
+     */
+    public record States(BoardGeometry geometry, long[] packed, int count) {
+
+        /**
+         * Unpacks one of the states
+         *
+         * @param index the state
+         * @return the board
+         */
+        public ChessConfig board(int index) {
+            return new ChessConfig(geometry, packed, index * geometry.getPackedLength());
+        }
+    }
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Gets the bytes of a board record
+     *
+     * @param geometry size of the board
+     * @return the record size
+     */
+    public static int boardBytes(BoardGeometry geometry) {
+        return HEADER_BYTES + geometry.getPackedLength() * Long.BYTES;
+    }
+
+    /**
+     * Gets the bytes of a solution record
+     *
+     * @param geometry size of the board
+     * @param moves    number of moves
+     * @return the record size
+     */
+    public static int solutionBytes(BoardGeometry geometry, int moves) {
+        return boardBytes(geometry) + Integer.BYTES + moves * Integer.BYTES;
+    }
+
+    /**
+     * Gets the bytes of a batch of states
+     *
+     * @param geometry size of the boards
+     * @param count    number of states
+     * @return the record size
+     */
+    public static int statesBytes(BoardGeometry geometry, int count) {
+        return HEADER_BYTES + Integer.BYTES + count * geometry.getPackedLength() * Long.BYTES;
+    }
+
+    /**
+     * Writes a board record
+     *
+     * @param out   the buffer, written from its position
+     * @param board the board
+     */
+    public static void writeBoard(ByteBuffer out, ChessConfig board) {
+
+        writeHeader(out, BOARD, board.getGeometry());
+        writePacked(out, board.pack(), 0, board.getGeometry().getPackedLength());
+    }
+
+    /**
+     * Reads a board record
+     *
+     * @param in the buffer, read from its position
+     * @return the board
+     * @throws IllegalArgumentException if the buffer does not hold a board record
+     */
+    public static ChessConfig readBoard(ByteBuffer in) {
+
+        ByteOrder order = in.order();
+
+        try {
+            BoardGeometry geometry = readHeader(in, BOARD);
+
+            return new ChessConfig(geometry, readPacked(in, geometry, 1), 0);
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Writes a solution record
+     *
+     * @param out   the buffer, written from its position
+     * @param start the start board
+     * @param moves the captures that solve it, as given by {@link Solver#movesOf(List)}
+     */
+    public static void writeSolution(ByteBuffer out, ChessConfig start, int[] moves) {
+
+        writeHeader(out, SOLUTION, start.getGeometry());
+        writePacked(out, start.pack(), 0, start.getGeometry().getPackedLength());
+
+        out.putInt(moves.length);
+
+        for (int move : moves) {
+            out.putInt(move);
+        }
+    }
+
+    /**
+     * Reads a solution record
+     *
+     * @param in the buffer, read from its position
+     * @return the solution
+     * @throws IllegalArgumentException if the buffer does not hold a solution record
+     */
+    public static Solution readSolution(ByteBuffer in) {
+
+        ByteOrder order = in.order();
+
+        try {
+            BoardGeometry geometry = readHeader(in, SOLUTION);
+
+            ChessConfig start = new ChessConfig(geometry, readPacked(in, geometry, 1), 0);
+
+            int[] moves = new int[readCount(in, Integer.BYTES)];
+
+            for (int i = 0; i < moves.length; i++) {
+
+                moves[i] = in.getInt();
+
+                if (ChessConfig.moveFrom(moves[i]) >= geometry.getSquares()
+                        || ChessConfig.moveTo(moves[i]) >= geometry.getSquares()) {
+                    throw new IllegalArgumentException("Bad move " + moves[i]);
+                }
+            }
+
+            return new Solution(start, moves);
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Writes a batch of states
+     *
+     * @param out      the buffer, written from its position
+     * @param geometry size of the boards
+     * @param packed   the packed boards, one after another
+     * @param count    number of boards
+     */
+    public static void writeStates(ByteBuffer out, BoardGeometry geometry, long[] packed, int count) {
+
+        writeHeader(out, STATES, geometry);
+
+        out.putInt(count);
+
+        writePacked(out, packed, 0, count * geometry.getPackedLength());
+    }
+
+    /**
+     * Reads a batch of states
+     *
+     * @param in the buffer, read from its position
+     * @return the states
+     * @throws IllegalArgumentException if the buffer does not hold a batch of states
+     */
+    public static States readStates(ByteBuffer in) {
+
+        ByteOrder order = in.order();
+
+        try {
+            BoardGeometry geometry = readHeader(in, STATES);
+
+            int count = readCount(in, geometry.getPackedLength() * Long.BYTES);
+
+            return new States(geometry, readPacked(in, geometry, count), count);
+        } finally {
+            in.order(order);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer out, int kind, BoardGeometry geometry) {
+
+        out.put(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) kind);
+        out.put((byte) (out.order() == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN : 0));
+        out.put((byte) 0);
+        out.putShort((short) geometry.getRows());
+        out.putShort((short) geometry.getCols());
+    }
+
+    /**
+     * Reads the header and switches the buffer to the order of the record
+     */
+    private static BoardGeometry readHeader(ByteBuffer in, int kind) {
+
+        require(in, HEADER_BYTES);
+
+        for (byte magic : MAGIC) {
+            if (in.get() != magic) {
+                throw new IllegalArgumentException("Not a binary chess record");
+            }
+        }
+
+        int version = in.get();
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported record version " + version);
+        }
+
+        int found = in.get();
+
+        if (found != kind) {
+            throw new IllegalArgumentException("Expected a record of kind " + kind + " but found " + found);
+        }
+
+        int flags = in.get();
+        in.get();
+
+        in.order((flags & LITTLE_ENDIAN) != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        return BoardGeometry.of(Short.toUnsignedInt(in.getShort()), Short.toUnsignedInt(in.getShort()));
+    }
+
+    /**
+     * Reads a count and checks the buffer holds that many items
+     */
+    private static int readCount(ByteBuffer in, int itemBytes) {
+
+        require(in, Integer.BYTES);
+
+        int count = in.getInt();
+
+        if (count < 0 || (long) count * itemBytes > in.remaining()) {
+            throw new IllegalArgumentException("Bad count " + count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Checks the buffer holds at least the given number of bytes
+     */
+    private static void require(ByteBuffer in, long bytes) {
+
+        if (in.remaining() < bytes) {
+            throw new IllegalArgumentException("Record is cut short, needs " + bytes + " bytes but has "
+                    + in.remaining());
+        }
+    }
+
+    private static void writePacked(ByteBuffer out, long[] packed, int offset, int words) {
+        out.asLongBuffer().put(packed, offset, words);
+        out.position(out.position() + words * Long.BYTES);
+    }
+
+    /**
+     * Reads packed boards and checks every square holds a known piece code
+     */
+    private static long[] readPacked(ByteBuffer in, BoardGeometry geometry, int count) {
+
+        int length = geometry.getPackedLength();
+        int words = count * length;
+
+        require(in, (long) words * Long.BYTES);
+
+        long[] packed = new long[words];
+
+        in.asLongBuffer().get(packed);
+        in.position(in.position() + words * Long.BYTES);
+
+        long mask = (1L << ChessConfig.BITS_PER_SQUARE) - 1;
+
+        for (int offset = 0; offset < words; offset += length) {
+            for (int square = 0; square < length * ChessConfig.SQUARES_PER_WORD; square++) {
+
+                int shift = (square % ChessConfig.SQUARES_PER_WORD) * ChessConfig.BITS_PER_SQUARE;
+                long code = (packed[offset + square / ChessConfig.SQUARES_PER_WORD] >>> shift) & mask;
+
+                if (code > (square < geometry.getSquares() ? MAX_CODE : 0)) {
+                    throw new IllegalArgumentException("Bad piece code " + code + " for square " + square);
+                }
+            }
+
+            for (int word = 0; word < length; word++) {
+                if (packed[offset + word] >>> (ChessConfig.SQUARES_PER_WORD * ChessConfig.BITS_PER_SQUARE) != 0) {
+                    throw new IllegalArgumentException("Bad padding in packed board");
+                }
+            }
+        }
+
+        return packed;
+    }
+}
@@ -0,0 +1,203 @@
+package puzzles.chess.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The size of a chess board and everything worked out from it once: the row and column
+ * of each square, the packed length and the square maps of the board symmetries.
+ * <p>
+ * A geometry never changes after it is made and there is one per board size, shared by
+ * every config of that size, so boards of different sizes can be used at the same time.
+ * Squares are numbered row * cols + col.
+ *
+ * @author Nick Creeley
+ */
+public final class BoardGeometry {
+
+    /**
+     * The geometry of each board size made so far
+     */
+    private static final Map<Long, BoardGeometry> SIZES = new ConcurrentHashMap<>();
+
+    private final int rows;
+
+    private final int cols;
+
+    private final int packedLength;
+
+    private final int[] rowOf;
+
+    private final int[] colOf;
+
+    /**
+     * Square maps of the symmetries, each map gives the square a square of the transformed
+     * board is read from. The identity comes first and the left to right mirror second,
+     * then the rest of the symmetries of a rectangle, then the ones that only exist on a
+     * square board.
+     */
+    private final int[][] symmetries;
+
+    private BoardGeometry(int rows, int cols) {
+
+        this.rows = rows;
+        this.cols = cols;
+        this.packedLength = (rows * cols + ChessConfig.SQUARES_PER_WORD - 1) / ChessConfig.SQUARES_PER_WORD;
+
+        this.rowOf = new int[rows * cols];
+        this.colOf = new int[rows * cols];
+
+        for (int square = 0; square < rows * cols; square++) {
+            rowOf[square] = square / cols;
+            colOf[square] = square % cols;
+        }
+
+        this.symmetries = makeSymmetries(rows, cols);
+    }
+
+    /**
+     * Gets the geometry of a board size
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the shared geometry
+     */
+    public static BoardGeometry of(int rows, int cols) {
+
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > 0xFFFF) {
+            throw new IllegalArgumentException("Bad board size: " + rows + "x" + cols);
+        }
+
+        return SIZES.computeIfAbsent(((long) rows << 32) | cols, size -> new BoardGeometry(rows, cols));
+    }
+
+    private static int[][] makeSymmetries(int rows, int cols) {
+
+        int[][] maps = new int[rows == cols ? 8 : 4][rows * cols];
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+
+                int square = row * cols + col;
+                int flipRow = rows - 1 - row;
+                int flipCol = cols - 1 - col;
+
+                maps[0][square] = square;
+                maps[1][square] = row * cols + flipCol;
+                maps[2][square] = flipRow * cols + col;
+                maps[3][square] = flipRow * cols + flipCol;
+
+                if (rows == cols) {
+                    maps[4][square] = col * cols + row;
+                    maps[5][square] = flipCol * cols + row;
+                    maps[6][square] = col * cols + flipRow;
+                    maps[7][square] = flipCol * cols + flipRow;
+                }
+            }
+        }
+        return maps;
+    }
+
+    /**
+     * Gets the number of rows
+     *
+     * @return rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns
+     *
+     * @return columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the number of squares
+     *
+     * @return rows * cols
+     */
+    public int getSquares() {
+        return rowOf.length;
+    }
+
+    /**
+     * Gets the number of longs in the packed form of a board
+     *
+     * @return words per packed board
+     */
+    public int getPackedLength() {
+        return packedLength;
+    }
+
+    /**
+     * Checks if a row and column are on the board
+     *
+     * @param row the row
+     * @param col the column
+     * @return true if the square exists
+     */
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * Gets the number of a square
+     *
+     * @param row row of the square
+     * @param col column of the square
+     * @return row * cols + col
+     */
+    public int square(int row, int col) {
+        return row * cols + col;
+    }
+
+    /**
+     * Gets the row of a square
+     *
+     * @param square the square
+     * @return its row
+     */
+    public int row(int square) {
+        return rowOf[square];
+    }
+
+    /**
+     * Gets the column of a square
+     *
+     * @param square the square
+     * @return its column
+     */
+    public int col(int square) {
+        return colOf[square];
+    }
+
+    /**
+     * Gets the number of symmetries of the board, 8 for a square board and 4 otherwise
+     *
+     * @return the number of symmetries, the identity included
+     */
+    public int getSymmetryCount() {
+        return symmetries.length;
+    }
+
+    /**
+     * Gets the square a square of a transformed board is read from
+     *
+     * @param symmetry index of the symmetry, 0 is the identity
+     * @param square   square of the transformed board
+     * @return the square of the original board
+     */
+    public int mapSquare(int symmetry, int square) {
+        return symmetries[symmetry][square];
+    }
+
+    @Override
+    public String toString() {
+        return rows + "x" + cols;
+    }
+}
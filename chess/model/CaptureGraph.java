@@ -0,0 +1,162 @@
+package puzzles.chess.model;
+
+/**
+ * Proves boards unsolvable without searching them, from where each piece could ever go.
+ * <p>
+ * A capture moves a piece onto a square that holds a piece, so pieces only ever stand on
+ * squares that hold a piece now. The reach of a piece is every one of those squares it
+ * could get to by a chain of its own moves, ignoring pieces in the way. A bishop only
+ * reaches squares of its own colour and a pawn only squares above it, so the reach of a
+ * piece is often just a few squares.
+ * <p>
+ * Every capture happens on a square in the reach of both pieces, and a solved board has
+ * had every piece but one captured, so the pieces are connected when each is joined to
+ * every piece its reach meets. A board whose pieces are not connected can not be solved.
+ * That covers a piece nothing can get to that can not get to anything, and a bishop alone
+ * on its colour with nothing able to move onto its square.
+ *
+ * @author Nick Creeley
+ */
+public final class CaptureGraph {
+
+    private CaptureGraph() {
+    }
+
+    /**
+     * Checks if the pieces of a board fall into groups that can never capture each other
+     *
+     * @param config the board
+     * @return true if the board can not be solved, false if it may be solvable
+     */
+    public static boolean isDisconnected(ChessConfig config) {
+
+        int count = config.getPiecesLeft();
+
+        //reach is kept as a mask over the pieces
+
+        if (count < 2 || count > Long.SIZE) {
+            return false;
+        }
+
+        int[] rows = new int[count];
+        int[] cols = new int[count];
+        char[] pieces = new char[count];
+
+        int index = 0;
+
+        for (int row = 0; row < config.getMaxRow(); row++) {
+            for (int col = 0; col < config.getMaxCol(); col++) {
+                if (config.getPiece(row, col) != ChessConfig.empty) {
+                    rows[index] = row;
+                    cols[index] = col;
+                    pieces[index] = config.getPiece(row, col);
+                    index++;
+                }
+            }
+        }
+
+        //the pieces a kind of piece could capture from each square, made once per kind
+
+        long[][] attacks = new long[1 << ChessConfig.BITS_PER_SQUARE][];
+
+        long[] reach = new long[count];
+
+        for (int piece = 0; piece < count; piece++) {
+
+            int kind = ChessConfig.pieceCode(pieces[piece]);
+
+            if (attacks[kind] == null) {
+                attacks[kind] = attacks(pieces[piece], rows, cols);
+            }
+
+            reach[piece] = reach(piece, attacks[kind]);
+        }
+
+        //grow one group from the first piece until nothing more joins it
+
+        long group = 1;
+
+        long squares = reach[0];
+
+        boolean grown = true;
+
+        while (grown) {
+
+            grown = false;
+
+            for (int piece = 1; piece < count; piece++) {
+                if ((group & 1L << piece) == 0 && (reach[piece] & squares) != 0) {
+                    group |= 1L << piece;
+                    squares |= reach[piece];
+                    grown = true;
+                }
+            }
+        }
+
+        return Long.bitCount(group) != count;
+    }
+
+    /**
+     * Gets the squares a piece could get to from where it stands
+     *
+     * @param piece   index of the piece
+     * @param attacks the pieces its kind could capture from each square
+     * @return mask of the squares, its own included
+     */
+    private static long reach(int piece, long[] attacks) {
+
+        long reached = 1L << piece;
+
+        long frontier = reached;
+
+        while (frontier != 0) {
+
+            int from = Long.numberOfTrailingZeros(frontier);
+            frontier &= frontier - 1;
+
+            long next = attacks[from] & ~reached;
+
+            reached |= next;
+            frontier |= next;
+        }
+
+        return reached;
+    }
+
+    /**
+     * Gets the pieces a kind of piece standing on each occupied square could capture if
+     * nothing were in the way
+     */
+    private static long[] attacks(char kind, int[] rows, int[] cols) {
+
+        long[] attacks = new long[rows.length];
+
+        for (int from = 0; from < rows.length; from++) {
+            for (int to = 0; to < rows.length; to++) {
+                if (to != from && attacks(kind, rows[to] - rows[from], cols[to] - cols[from])) {
+                    attacks[from] |= 1L << to;
+                }
+            }
+        }
+
+        return attacks;
+    }
+
+    /**
+     * Checks if a piece could capture a piece the given rows and columns away
+     */
+    private static boolean attacks(char kind, int rows, int cols) {
+
+        int across = Math.abs(cols);
+
+        return switch (kind) {
+            case ChessConfig.bishop -> Math.abs(rows) == across;
+            case ChessConfig.rook -> rows == 0 || cols == 0;
+            case ChessConfig.queen -> rows == 0 || cols == 0 || Math.abs(rows) == across;
+            case ChessConfig.knight -> Math.abs(rows) * across == 2;
+            case ChessConfig.king -> Math.max(Math.abs(rows), across) == 1;
+            case ChessConfig.pawn -> rows == -1 && across == 1;
+            default -> false;
+        };
+    }
+}
@@ -1,10 +1,11 @@
 package puzzles.chess.model;
 
 import puzzles.common.solver.Configuration;
+import puzzles.common.solver.NeighborSink;
+import puzzles.common.solver.PackedConfiguration;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -13,20 +14,71 @@ import java.util.*;
  * @author Nick Creeley
  */
 
-public class ChessConfig implements Configuration {
+public class ChessConfig implements PackedConfiguration {
 
 
     public static final char bishop = 'B', rook = 'R', queen = 'Q',
             knight = 'N', king = 'K', pawn = 'P', empty = '.';
 
-    public static int maxRow;
+    /**
+     * Size of the board, shared by every config of the same size
+     */
+    private final BoardGeometry geometry;
+
+    private final int maxRow;
+
+    private final int maxCol;
+
+    /**
+     * Number of bits used for one square in the packed form of a board
+     */
+    public static final int BITS_PER_SQUARE = 3;
+
+    /**
+     * Number of squares stored in each long of the packed form, no square straddles two longs
+     */
+    public static final int SQUARES_PER_WORD = Long.SIZE / BITS_PER_SQUARE;
 
-    public static int maxCol;
+    /**
+     * The pieces indexed by their packed code, code 0 is always an empty square
+     */
+    private static final char[] PIECE_CODES = {empty, bishop, rook, queen, knight, king, pawn};
+
+    /**
+     * Row and column steps of the pieces, in the order their captures are visited
+     */
+    private static final int[][] STRAIGHT = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}},
+            DIAGONAL = {{-1, 1}, {-1, -1}, {1, 1}, {1, -1}},
+            KNIGHT = {{1, 2}, {-1, 2}, {1, -2}, {-1, -2}, {2, 1}, {2, -1}, {-2, 1}, {-2, -1}},
+            KING = {{-1, 0}, {1, 0}, {0, 1}, {0, -1}, {-1, -1}, {-1, 1}, {1, 1}, {1, -1}},
+            PAWN = {{-1, 1}, {-1, -1}};
+
+    /**
+     * Steps from a pawn back to the squares it could have captured from
+     */
+    private static final int[][] PAWN_BACK = {{1, -1}, {1, 1}};
 
     private int piecesLeft;
 
     private char[][] board;
 
+    /**
+     * Zobrist key of the board, kept up to date on every change to a square
+     */
+    private long zobrist;
+
+    /**
+     * Moves made in place, two ints per move: the move and the piece it captured
+     */
+    private int[] undo;
+
+    private int undoSize;
+
+    /**
+     * Reused by {@link #packKey(long[], int)} to build each symmetric packing
+     */
+    private long[] keyScratch;
+
 
     /**
      * Creates a new chess configuration with a file
@@ -35,35 +87,30 @@ public class ChessConfig implements Configuration {
      * @throws IOException input output exception
      */
     public ChessConfig(String filename) throws IOException {
-        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
-
-            //first line is max row and col
-            String line = in.readLine();
-            String[] rowCol = line.split("\\s+");
-
-            maxRow = Integer.parseInt(rowCol[0]);
-
-            maxCol = Integer.parseInt(rowCol[1]);
-
-            //now initialize board and fill it with values
-
-            this.board = new char[maxRow][maxCol];
-
-            this.piecesLeft = 0;
+        this(readFirst(filename));
+    }
 
-            for (int row = 0; row < maxRow; row++) {
+    /**
+     * Copies a config read by a {@link PuzzleReader}
+     */
+    private ChessConfig(ChessConfig other) {
+        this(other, other.piecesLeft);
+    }
 
-                line = in.readLine();
-                String[] fields = line.split("\\s+");
+    /**
+     * Reads the first puzzle of a file
+     */
+    private static ChessConfig readFirst(String filename) throws IOException {
 
-                for (int col = 0; col < maxCol; col++) {
+        try (PuzzleReader in = new PuzzleReader(filename)) {
 
-                    if (fields[col].charAt(0) != empty) {
-                        piecesLeft++;
-                    }
-                    board[row][col] = fields[col].charAt(0);
-                }
+            if (!in.hasNext()) {
+                throw new IOException("No puzzle in " + filename);
             }
+            return in.next();
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
@@ -75,8 +122,12 @@ public class ChessConfig implements Configuration {
      */
     public ChessConfig(ChessConfig other, int piecesLeft) {
 
+        this.geometry = other.geometry;
+        this.maxRow = other.maxRow;
+        this.maxCol = other.maxCol;
         this.piecesLeft = piecesLeft;
         this.board = new char[maxRow][maxCol];
+        this.zobrist = other.zobrist;
 
         for (int row = 0; row < maxRow; row++) {
             System.arraycopy(other.board[row], 0, this.board[row], 0, maxCol);
@@ -85,487 +136,722 @@ public class ChessConfig implements Configuration {
     }
 
 
+    /**
+     * Creates a new config from the packed form of a board
+     *
+     * @param geometry size of the board
+     * @param packed   the packed board made by {@link #pack(long[], int)}
+     * @param offset   index of the first word of the board in packed
+     */
+    public ChessConfig(BoardGeometry geometry, long[] packed, int offset) {
+
+        this.geometry = geometry;
+        this.maxRow = geometry.getRows();
+        this.maxCol = geometry.getCols();
+        this.piecesLeft = 0;
+        this.board = new char[maxRow][maxCol];
+
+        unpack(packed, offset);
+
+    }
+
+
     @Override
     public boolean isSolution() {
         return piecesLeft == 1;
     }
 
+    /**
+     * Checks if the pieces fall into groups that can never capture each other, see
+     * {@link CaptureGraph}
+     *
+     * @return true if the board can not be solved
+     */
+    @Override
+    public boolean isDeadEnd() {
+        return CaptureGraph.isDisconnected(this);
+    }
+
     @Override
     public Collection<Configuration> getNeighbors() {
 
         Collection<Configuration> neighbors = new ArrayList<>();
 
-        for (int currRow = 0; currRow < maxRow; currRow++) {
-            for (int currCol = 0; currCol < maxCol; currCol++) {
+        forEachNeighbor(move -> neighbors.add(applyMove(move)));
 
-                if (board[currRow][currCol] != empty) {
+        return neighbors;
+    }
 
-                    switch (board[currRow][currCol]) {
+    /**
+     * Visits every capture in row major order of the capturing piece. Rooks and queens
+     * look right, left, down then up, bishops and queens look up right, up left, down
+     * right then down left.
+     *
+     * @param sink receives each capture as a move made by {@link #move(int, int)}
+     * @return true if every capture was visited, false if the sink stopped early
+     */
+    @Override
+    public boolean forEachNeighbor(NeighborSink sink) {
 
-                        case queen -> {
+        for (int currRow = 0; currRow < maxRow; currRow++) {
+            for (int currCol = 0; currCol < maxCol; currCol++) {
 
-                            //checks the top, bottom, left and right
-                            Collection<Configuration> horiVertNeighbors = horizontalVerticalNeighbors(currRow, currCol, queen);
-                            neighbors.addAll(horiVertNeighbors);
+                switch (board[currRow][currCol]) {
 
-                            //checks diagonals
-                            Collection<Configuration> diagonalNeighbors = diagonalNeighbors(currRow, currCol, queen);
-                            neighbors.addAll(diagonalNeighbors);
+                    case queen -> {
+                        if (!slide(currRow, currCol, STRAIGHT, sink) || !slide(currRow, currCol, DIAGONAL, sink)) {
+                            return false;
+                        }
+                    }
 
+                    case rook -> {
+                        if (!slide(currRow, currCol, STRAIGHT, sink)) {
+                            return false;
                         }
+                    }
 
-                        case rook -> {
+                    case bishop -> {
+                        if (!slide(currRow, currCol, DIAGONAL, sink)) {
+                            return false;
+                        }
+                    }
 
-                            Collection<Configuration> horiVertNeighbors = horizontalVerticalNeighbors(currRow, currCol, rook);
-                            neighbors.addAll(horiVertNeighbors);
+                    case knight -> {
+                        if (!jump(currRow, currCol, KNIGHT, sink)) {
+                            return false;
                         }
+                    }
 
-                        case knight -> {
+                    case king -> {
+                        if (!jump(currRow, currCol, KING, sink)) {
+                            return false;
+                        }
+                    }
 
-                            //check left to right first
+                    case pawn -> {
+                        if (!jump(currRow, currCol, PAWN, sink)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
 
-                            if (currCol + 2 < maxCol && currRow + 1 < maxRow && board[currRow + 1][currCol + 2] != empty) {
+        return true;
+    }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 1][currCol + 2] = knight;
-                                neighbors.add(neighbor);
+    /**
+     * Makes the config reached by a capture, the piece on the from square replaces
+     * the piece on the to square
+     *
+     * @param move a move made by {@link #move(int, int)}
+     * @return the new config
+     */
+    @Override
+    public ChessConfig applyMove(int move) {
 
-                            }
+        int from = moveFrom(move);
+        int to = moveTo(move);
 
-                            if (currCol + 2 < maxCol && currRow - 1 >= 0 && board[currRow - 1][currCol + 2] != empty) {
+        char piece = board[geometry.row(from)][geometry.col(from)];
+        char captured = board[geometry.row(to)][geometry.col(to)];
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol + 2] = knight;
-                                neighbors.add(neighbor);
+        ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
+        neighbor.board[geometry.row(to)][geometry.col(to)] = piece;
+        neighbor.board[geometry.row(from)][geometry.col(from)] = empty;
+        neighbor.zobrist ^= zobristKey(from, piece) ^ zobristKey(to, captured) ^ zobristKey(to, piece);
 
-                            }
+        return neighbor;
+    }
 
-                            if (currCol - 2 >= 0 && currRow + 1 < maxRow && board[currRow + 1][currCol - 2] != empty) {
+    /**
+     * Visits the first piece in each direction for pieces that slide (rook, bishop, queen)
+     *
+     * @param currRow    row of the piece
+     * @param currCol    column of the piece
+     * @param directions row and column steps of each direction
+     * @param sink       receives the captures
+     * @return false if the sink stopped early
+     */
+    private boolean slide(int currRow, int currCol, int[][] directions, NeighborSink sink) {
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 1][currCol - 2] = knight;
-                                neighbors.add(neighbor);
-                            }
+        for (int[] direction : directions) {
 
-                            if (currCol - 2 >= 0 && currRow - 1 >= 0 && board[currRow - 1][currCol - 2] != empty) {
+            int moveRow = currRow + direction[0];
+            int moveCol = currCol + direction[1];
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol - 2] = knight;
-                                neighbors.add(neighbor);
-                            }
+            while (geometry.contains(moveRow, moveCol)) {
 
-                            //check top to bottom
+                if (board[moveRow][moveCol] != empty) {
 
-                            if (currRow + 2 < maxRow && currCol + 1 < maxCol && board[currRow + 2][currCol + 1] != empty) {
+                    if (!sink.accept(move(currRow * maxCol + currCol, moveRow * maxCol + moveCol))) {
+                        return false;
+                    }
+                    break;
+                }
+                moveRow += direction[0];
+                moveCol += direction[1];
+            }
+        }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 2][currCol + 1] = knight;
-                                neighbors.add(neighbor);
+        return true;
+    }
 
-                            }
+    /**
+     * Visits the squares a piece that moves a fixed step can capture (knight, king, pawn)
+     *
+     * @param currRow row of the piece
+     * @param currCol column of the piece
+     * @param steps   row and column offset of each step
+     * @param sink    receives the captures
+     * @return false if the sink stopped early
+     */
+    private boolean jump(int currRow, int currCol, int[][] steps, NeighborSink sink) {
 
-                            if (currRow + 2 < maxRow && currCol - 1 >= 0 && board[currRow + 2][currCol - 1] != empty) {
+        for (int[] step : steps) {
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 2][currCol - 1] = knight;
-                                neighbors.add(neighbor);
+            int moveRow = currRow + step[0];
+            int moveCol = currCol + step[1];
 
-                            }
+            if (geometry.contains(moveRow, moveCol)
+                    && board[moveRow][moveCol] != empty
+                    && !sink.accept(move(currRow * maxCol + currCol, moveRow * maxCol + moveCol))) {
+                return false;
+            }
+        }
 
-                            if (currRow - 2 >= 0 && currCol + 1 < maxCol && board[currRow - 2][currCol + 1] != empty) {
+        return true;
+    }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 2][currCol + 1] = knight;
-                                neighbors.add(neighbor);
+    /**
+     * Visits every capture that could have led to this board, the game played backwards.
+     * The piece on the to square of each move stood on its from square before the capture,
+     * which is empty now. Any piece could have been captured, the move does not depend on it.
+     *
+     * @param sink receives each capture as a move made by {@link #move(int, int)}
+     * @return true if every capture was visited, false if the sink stopped early
+     */
+    public boolean forEachUncapture(NeighborSink sink) {
 
-                            }
+        for (int currRow = 0; currRow < maxRow; currRow++) {
+            for (int currCol = 0; currCol < maxCol; currCol++) {
 
-                            if (currRow - 2 >= 0 && currCol - 1 >= 0 && board[currRow - 2][currCol - 1] != empty) {
+                int to = currRow * maxCol + currCol;
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 2][currCol - 1] = knight;
-                                neighbors.add(neighbor);
+                boolean visited = switch (board[currRow][currCol]) {
+                    case queen -> unslide(currRow, currCol, STRAIGHT, sink) && unslide(currRow, currCol, DIAGONAL, sink);
+                    case rook -> unslide(currRow, currCol, STRAIGHT, sink);
+                    case bishop -> unslide(currRow, currCol, DIAGONAL, sink);
+                    case knight -> unjump(to, KNIGHT, sink);
+                    case king -> unjump(to, KING, sink);
+                    case pawn -> unjump(to, PAWN_BACK, sink);
+                    default -> true;
+                };
 
-                            }
-                        }
+                if (!visited) {
+                    return false;
+                }
+            }
+        }
 
-                        case king -> {
+        return true;
+    }
 
-                            //check above first
+    /**
+     * Visits the empty squares a sliding piece could have come from, every direction is
+     * walked until the first piece since the directions come in opposite pairs
+     */
+    private boolean unslide(int currRow, int currCol, int[][] directions, NeighborSink sink) {
 
-                            if (currRow - 1 >= 0 && board[currRow - 1][currCol] != empty) {
+        for (int[] direction : directions) {
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol] = king;
-                                neighbors.add(neighbor);
+            int moveRow = currRow + direction[0];
+            int moveCol = currCol + direction[1];
 
-                            }
+            while (geometry.contains(moveRow, moveCol)
+                    && board[moveRow][moveCol] == empty) {
 
-                            //check below
+                if (!sink.accept(move(moveRow * maxCol + moveCol, currRow * maxCol + currCol))) {
+                    return false;
+                }
+                moveRow += direction[0];
+                moveCol += direction[1];
+            }
+        }
 
-                            if (currRow + 1 < maxRow && board[currRow + 1][currCol] != empty) {
+        return true;
+    }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 1][currCol] = king;
-                                neighbors.add(neighbor);
+    /**
+     * Visits the empty squares a piece that moves a fixed step could have come from
+     *
+     * @param to    square of the piece
+     * @param steps steps from the piece back to where it came from
+     */
+    private boolean unjump(int to, int[][] steps, NeighborSink sink) {
 
-                            }
+        for (int[] step : steps) {
 
-                            //check to the right
+            int moveRow = geometry.row(to) + step[0];
+            int moveCol = geometry.col(to) + step[1];
 
-                            if (currCol + 1 < maxCol && board[currRow][currCol + 1] != empty) {
+            if (geometry.contains(moveRow, moveCol)
+                    && board[moveRow][moveCol] == empty
+                    && !sink.accept(move(moveRow * maxCol + moveCol, to))) {
+                return false;
+            }
+        }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow][currCol + 1] = king;
-                                neighbors.add(neighbor);
+        return true;
+    }
 
-                            }
+    /**
+     * Takes back a capture given by {@link #forEachUncapture(NeighborSink)} in place,
+     * the capturing piece goes back to the from square and the captured piece is put
+     * back on the to square. {@link #recapture(int)} makes the capture again.
+     *
+     * @param move     the capture
+     * @param captured the piece it captured
+     */
+    public void uncapture(int move, char captured) {
 
-                            //check to the right
+        int from = moveFrom(move);
+        int to = moveTo(move);
 
-                            if (currCol - 1 >= 0 && board[currRow][currCol - 1] != empty) {
+        char piece = board[geometry.row(to)][geometry.col(to)];
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow][currCol - 1] = king;
-                                neighbors.add(neighbor);
+        board[geometry.row(from)][geometry.col(from)] = piece;
+        board[geometry.row(to)][geometry.col(to)] = captured;
 
-                            }
+        zobrist ^= zobristKey(from, piece) ^ zobristKey(to, captured) ^ zobristKey(to, piece);
 
-                            //check diagonals
+        piecesLeft++;
+    }
 
-                            if (currRow - 1 >= 0 && currCol - 1 >= 0 && board[currRow - 1][currCol - 1] != empty) {
+    /**
+     * Makes a capture taken back by {@link #uncapture(int, char)} again, without
+     * keeping it for {@link #unmakeCapture()}
+     *
+     * @param move the capture
+     */
+    public void recapture(int move) {
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol - 1] = king;
-                                neighbors.add(neighbor);
+        int from = moveFrom(move);
+        int to = moveTo(move);
 
-                            }
+        char piece = board[geometry.row(from)][geometry.col(from)];
+        char captured = board[geometry.row(to)][geometry.col(to)];
 
-                            if (currRow - 1 >= 0 && currCol + 1 < maxCol && board[currRow - 1][currCol + 1] != empty) {
+        board[geometry.row(to)][geometry.col(to)] = piece;
+        board[geometry.row(from)][geometry.col(from)] = empty;
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol + 1] = king;
-                                neighbors.add(neighbor);
+        zobrist ^= zobristKey(from, piece) ^ zobristKey(to, captured) ^ zobristKey(to, piece);
 
-                            }
+        piecesLeft--;
+    }
 
-                            if (currRow + 1 < maxRow && currCol + 1 < maxCol && board[currRow + 1][currCol + 1] != empty) {
+    /**
+     * Makes a move from the squares of the capturing and the captured piece,
+     * a square is numbered row * maxCol + col
+     *
+     * @param from square of the capturing piece
+     * @param to   square of the captured piece
+     * @return the move
+     */
+    public static int move(int from, int to) {
+        return (from << 16) | to;
+    }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 1][currCol + 1] = king;
-                                neighbors.add(neighbor);
+    /**
+     * Gets the square a move starts from
+     *
+     * @param move the move
+     * @return square of the capturing piece
+     */
+    public static int moveFrom(int move) {
+        return move >>> 16;
+    }
 
-                            }
+    /**
+     * Gets the square a move captures on
+     *
+     * @param move the move
+     * @return square of the captured piece
+     */
+    public static int moveTo(int move) {
+        return move & 0xFFFF;
+    }
 
-                            if (currRow + 1 < maxRow && currCol - 1 >= 0 && board[currRow + 1][currCol - 1] != empty) {
+    /**
+     * Captures in place without copying the board, the capture can be taken back with
+     * {@link #unmakeCapture()}. Search engines use this to walk the tree on one board and
+     * only copy a board when it has to be stored.
+     *
+     * @param from square of the capturing piece, row * maxCol + col
+     * @param to   square of the captured piece
+     */
+    public void makeCapture(int from, int to) {
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow + 1][currCol - 1] = king;
-                                neighbors.add(neighbor);
+        if (undo == null) {
+            undo = new int[2 * maxRow * maxCol];
+        } else if (undoSize == undo.length) {
+            undo = Arrays.copyOf(undo, undo.length * 2);
+        }
 
-                            }
+        char piece = board[geometry.row(from)][geometry.col(from)];
+        char captured = board[geometry.row(to)][geometry.col(to)];
 
-                        }
+        undo[undoSize++] = move(from, to);
+        undo[undoSize++] = captured;
 
-                        case pawn -> {
+        board[geometry.row(to)][geometry.col(to)] = piece;
+        board[geometry.row(from)][geometry.col(from)] = empty;
 
+        zobrist ^= zobristKey(from, piece) ^ zobristKey(to, captured) ^ zobristKey(to, piece);
 
-                            if (currRow - 1 >= 0 && currCol + 1 < maxCol && board[currRow - 1][currCol + 1] != empty) {
+        piecesLeft--;
+    }
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol + 1] = pawn;
-                                neighbors.add(neighbor);
-                            }
+    /**
+     * Takes back the last capture made with {@link #makeCapture(int, int)}
+     */
+    public void unmakeCapture() {
 
-                            if (currRow - 1 >= 0 && currCol - 1 >= 0 && board[currRow - 1][currCol - 1] != empty) {
+        char captured = (char) undo[--undoSize];
+        int move = undo[--undoSize];
 
-                                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                                neighbor.board[currRow][currCol] = empty;
-                                neighbor.board[currRow - 1][currCol - 1] = pawn;
-                                neighbors.add(neighbor);
-                            }
+        int from = moveFrom(move);
+        int to = moveTo(move);
 
-                        }
+        char piece = board[geometry.row(to)][geometry.col(to)];
 
-                        case bishop -> {
+        board[geometry.row(from)][geometry.col(from)] = piece;
+        board[geometry.row(to)][geometry.col(to)] = captured;
 
-                            Collection<Configuration> diagonalNeighbors = diagonalNeighbors(currRow, currCol, bishop);
-                            neighbors.addAll(diagonalNeighbors);
+        zobrist ^= zobristKey(from, piece) ^ zobristKey(to, captured) ^ zobristKey(to, piece);
 
-                        }
-                    }
-                }
-            }
-        }
+        piecesLeft++;
+    }
 
-        return neighbors;
+    @Override
+    public void makeMove(int move) {
+        makeCapture(moveFrom(move), moveTo(move));
     }
 
+    @Override
+    public void unmakeMove() {
+        unmakeCapture();
+    }
 
     /**
-     * A method that gets the neighbors of common movements between rook and queen
+     * Gets the max column
      *
-     * @param currRow current row of piece
-     * @param currCol current col of piece
-     * @param piece   either a rook or queen
-     * @return collection of 4 possible neighbors
+     * @return int representing max col
      */
-    public Collection<Configuration> horizontalVerticalNeighbors(int currRow, int currCol, char piece) {
-
-        Collection<Configuration> neighbors = new ArrayList<>();
+    public int getMaxCol() {
+        return maxCol;
+    }
 
-        int moveCol = currCol; //used by both left and right
+    /**
+     * Gets the max row
+     *
+     * @return int representing max row
+     */
+    public int getMaxRow() {
+        return maxRow;
+    }
 
-        while (moveCol + 1 < maxCol) {
+    /**
+     * Gets the size of the board
+     *
+     * @return the geometry shared by every board of this size
+     */
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
 
-            if (board[currRow][moveCol + 1] != empty) {
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[currRow][moveCol + 1] = piece;
+    /**
+     * Gets a piece from the board
+     *
+     * @param row row of piece
+     * @param col column of piece
+     * @return the value in the grid position
+     */
+    public char getPiece(int row, int col) {
 
-                //add configuration to the neighbors and break
-                neighbors.add(neighbor);
-                break;
-            }
-            moveCol++;
-        }
+        return board[row][col];
+    }
 
-        //check left next and reset the currCol
+    /**
+     * Gets the number of pieces on the board
+     *
+     * @return pieces left
+     */
+    public int getPiecesLeft() {
+        return piecesLeft;
+    }
 
-        moveCol = currCol;
+    /**
+     * Sets a piece in the configuration
+     * Removes a piece if the piece being set it not empty
+     *
+     * @param row   row of piece
+     * @param col   column of piece
+     * @param value piece being placed
+     */
+    public void setPiece(int row, int col, char value) {
 
-        while (moveCol - 1 >= 0) {
+        if (value != empty) {
+            piecesLeft -= 1;
+        }
+        zobrist ^= zobristKey(row * maxCol + col, board[row][col]) ^ zobristKey(row * maxCol + col, value);
+        this.board[row][col] = value;
+    }
 
-            if (board[currRow][moveCol - 1] != empty) {
+    @Override
+    public int packedLength() {
+        return geometry.getPackedLength();
+    }
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[currRow][moveCol - 1] = piece;
+    /**
+     * Gets the packed code of a piece
+     *
+     * @param piece piece on the board
+     * @return code between 0 and 6
+     */
+    public static int pieceCode(char piece) {
+
+        return switch (piece) {
+            case empty -> 0;
+            case bishop -> 1;
+            case rook -> 2;
+            case queen -> 3;
+            case knight -> 4;
+            case king -> 5;
+            case pawn -> 6;
+            default -> throw new IllegalArgumentException("Unknown piece: " + piece);
+        };
+    }
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
-            }
-            moveCol--;
-        }
+    /**
+     * Gets the piece for a packed code
+     *
+     * @param code code between 0 and 6
+     * @return the piece
+     */
+    public static char pieceForCode(int code) {
+        return PIECE_CODES[code];
+    }
 
-        //check top and bottom next
+    /**
+     * Packs the board using {@link #BITS_PER_SQUARE} bits per square in row major order
+     *
+     * @return a new array holding the packed board
+     */
+    public long[] pack() {
 
-        int moveRow = currRow;
+        long[] packed = new long[packedLength()];
+        pack(packed, 0);
 
-        while (moveRow + 1 < maxRow) {
+        return packed;
+    }
 
-            if (board[moveRow + 1][currCol] != empty) {
+    @Override
+    public void pack(long[] dest, int offset) {
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow + 1][currCol] = piece;
+        int words = packedLength();
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
-            }
-            moveRow++;
+        for (int word = 0; word < words; word++) {
+            dest[offset + word] = 0L;
         }
 
-        //check top and rest moveRow
-        moveRow = currRow;
+        int square = 0;
 
-        while (moveRow - 1 >= 0) {
-
-            if (board[moveRow - 1][currCol] != empty) {
+        for (int currRow = 0; currRow < maxRow; currRow++) {
+            for (int currCol = 0; currCol < maxCol; currCol++) {
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow - 1][currCol] = piece;
+                char piece = board[currRow][currCol];
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
+                if (piece != empty) {
+                    int shift = (square % SQUARES_PER_WORD) * BITS_PER_SQUARE;
+                    dest[offset + square / SQUARES_PER_WORD] |= (long) pieceCode(piece) << shift;
+                }
+                square++;
             }
-            moveRow--;
         }
-
-        return neighbors;
-
     }
 
     /**
-     * A method that finds the diagonal neighbors for pieces that use diagonal movement
+     * Writes the smallest packing of this board under the symmetries allowed for its pieces.
+     * Pawns only capture upwards, so a board with pawns may only be mirrored left to right.
+     * Without pawns a board may also be flipped upside down and turned half way, and a
+     * square board may be turned a quarter or mirrored along its diagonals.
      *
-     * @param currRow the current row of the piece
-     * @param currCol the current column of the piece
-     * @param piece   the piece being used (bishop or queen)
-     * @return a collection of neighbors
+     * @param dest   array the key is written to
+     * @param offset index of the first word written
      */
+    @Override
+    public void packKey(long[] dest, int offset) {
 
-    public Collection<Configuration> diagonalNeighbors(int currRow, int currCol, char piece) {
+        int count = getSymmetryCount();
 
-        Collection<Configuration> neighbors = new ArrayList<>();
+        pack(dest, offset);
 
-        //check diagonals above first
+        int words = packedLength();
+        if (keyScratch == null || keyScratch.length != words) {
+            keyScratch = new long[words];
+        }
 
-        int moveRow = currRow;
+        long[] candidate = keyScratch;
 
-        int moveCol = currCol;
+        for (int symmetry = 1; symmetry < count; symmetry++) {
 
-        //check diagonal above and to the right
+            Arrays.fill(candidate, 0L);
 
-        while (moveRow - 1 >= 0 && moveCol + 1 < maxCol) {
+            for (int square = 0; square < geometry.getSquares(); square++) {
 
-            if (board[moveRow - 1][moveCol + 1] != empty) {
+                int from = geometry.mapSquare(symmetry, square);
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow - 1][moveCol + 1] = piece;
+                char piece = board[geometry.row(from)][geometry.col(from)];
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
+                if (piece != empty) {
+                    int shift = (square % SQUARES_PER_WORD) * BITS_PER_SQUARE;
+                    candidate[square / SQUARES_PER_WORD] |= (long) pieceCode(piece) << shift;
+                }
+            }
 
+            if (Arrays.compare(candidate, 0, words, dest, offset, offset + words) < 0) {
+                System.arraycopy(candidate, 0, dest, offset, words);
             }
-            moveRow--;
-            moveCol++;
         }
+    }
 
-        //reset the row and col and check up and to the left
-        moveRow = currRow;
-        moveCol = currCol;
-
-        while (moveRow - 1 >= 0 && moveCol - 1 >= 0) {
-
-            if (board[moveRow - 1][moveCol - 1] != empty) {
-
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow - 1][moveCol - 1] = piece;
-
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
+    /**
+     * Gets the number of symmetries {@link #packKey(long[], int)} uses for this board,
+     * 2 if there are pawns, otherwise 4, or 8 on a square board
+     *
+     * @return the number of symmetries, the identity included
+     */
+    public int getSymmetryCount() {
 
+        for (char[] row : board) {
+            for (char piece : row) {
+                if (piece == pawn) {
+                    return 2;
+                }
             }
-            moveRow--;
-            moveCol--;
         }
 
-        //reset the row and col and check down and to the right
-
-        moveRow = currRow;
-        moveCol = currCol;
+        return geometry.getSymmetryCount();
+    }
 
-        while (moveRow + 1 < maxRow && moveCol + 1 < maxCol) {
+    /**
+     * Makes the board turned or mirrored by one of the symmetries, in the order
+     * {@link #packKey(long[], int)} tries them
+     *
+     * @param symmetry index of the symmetry, 0 is the identity
+     * @return the new config
+     */
+    public ChessConfig transform(int symmetry) {
 
-            if (board[moveRow + 1][moveCol + 1] != empty) {
+        ChessConfig image = new ChessConfig(this, piecesLeft);
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow + 1][moveCol + 1] = piece;
+        image.zobrist = 0L;
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
+        for (int square = 0; square < geometry.getSquares(); square++) {
 
-            }
-            moveRow++;
-            moveCol++;
+            int from = geometry.mapSquare(symmetry, square);
 
+            image.board[geometry.row(square)][geometry.col(square)] = board[geometry.row(from)][geometry.col(from)];
+            image.zobrist ^= zobristKey(square, image.board[geometry.row(square)][geometry.col(square)]);
         }
 
-        //reset the row and col and check down and to the left
+        return image;
+    }
 
-        moveRow = currRow;
-        moveCol = currCol;
+    @Override
+    public ChessConfig fromPacked(long[] packed, int offset) {
+        return new ChessConfig(geometry, packed, offset);
+    }
 
-        while (moveRow + 1 < maxRow && moveCol - 1 >= 0) {
+    /**
+     * Overwrites this board with a packed board, forgetting any captures made in place
+     *
+     * @param packed the packed board
+     * @param offset index of the first word of the board in packed
+     */
+    @Override
+    public void unpack(long[] packed, int offset) {
 
-            if (board[moveRow + 1][moveCol - 1] != empty) {
+        long mask = (1L << BITS_PER_SQUARE) - 1;
 
-                ChessConfig neighbor = new ChessConfig(this, piecesLeft - 1);
-                neighbor.board[currRow][currCol] = empty;
-                neighbor.board[moveRow + 1][moveCol - 1] = piece;
+        undoSize = 0;
 
-                //add configuration to neighbors and break
-                neighbors.add(neighbor);
-                break;
+        zobrist = 0L;
 
-            }
-            moveRow++;
-            moveCol--;
+        int square = 0;
 
-        }
+        piecesLeft = 0;
 
-        return neighbors;
-    }
+        for (int currRow = 0; currRow < maxRow; currRow++) {
+            for (int currCol = 0; currCol < maxCol; currCol++) {
 
-    /**
-     * Gets the max column
-     *
-     * @return int representing max col
-     */
-    public static int getMaxCol() {
-        return maxCol;
-    }
+                int shift = (square % SQUARES_PER_WORD) * BITS_PER_SQUARE;
+                int code = (int) ((packed[offset + square / SQUARES_PER_WORD] >>> shift) & mask);
 
-    /**
-     * Gets the max row
-     *
-     * @return int representing max row
-     */
-    public static int getMaxRow() {
-        return maxRow;
+                if (code != 0) {
+                    piecesLeft++;
+                    zobrist ^= zobristKey(square, PIECE_CODES[code]);
+                }
+                board[currRow][currCol] = PIECE_CODES[code];
+                square++;
+            }
+        }
     }
 
-
     /**
-     * Gets a piece from the board
+     * Gets the Zobrist key of the board, the xor of a random number for each piece on
+     * each square. Boards that are equal always have the same key.
      *
-     * @param row row of piece
-     * @param col column of piece
-     * @return the value in the grid position
+     * @return the key
      */
-    public char getPiece(int row, int col) {
-
-        return board[row][col];
+    public long getZobrist() {
+        return zobrist;
     }
 
     /**
-     * Sets a piece in the configuration
-     * Removes a piece if the piece being set it not empty
+     * Gets the random number for a piece on a square. The numbers come from a splitmix64
+     * step of the square and piece code, so they need no table and work for any board size.
      *
-     * @param row   row of piece
-     * @param col   column of piece
-     * @param value piece being placed
+     * @param square square of the piece, row * maxCol + col
+     * @param piece  piece on the square, an empty square has no number
+     * @return the number
      */
-    public void setPiece(int row, int col, char value) {
+    private static long zobristKey(int square, char piece) {
 
-        if (value != empty) {
-            piecesLeft -= 1;
+        if (piece == empty) {
+            return 0L;
         }
-        this.board[row][col] = value;
+
+        long key = (square * 8L + pieceCode(piece)) * 0x9E3779B97F4A7C15L;
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+
+        return key ^ (key >>> 31);
     }
 
     @Override
     public boolean equals(Object other) {
         if (other instanceof ChessConfig o) {
+
+            //boards with different keys or sizes can not be equal, boards of different
+            //sizes may share a key when their pieces are on the same square numbers
+
+            if (this.zobrist != o.zobrist || this.geometry != o.geometry) {
+                return false;
+            }
+
             for (int currRow = 0; currRow < maxRow; currRow++) {
                 for (int currCol = 0; currCol < maxCol; currCol++) {
 
@@ -583,7 +869,7 @@ public class ChessConfig implements Configuration {
     @Override
     public int hashCode() {
 
-        return this.toString().hashCode();
+        return (int) (zobrist ^ (zobrist >>> 32));
 
     }
 
@@ -1,15 +1,20 @@
 package puzzles.chess.model;
 
 import puzzles.common.Coordinates;
+import puzzles.chess.tablebase.Tablebase;
 import puzzles.common.Observer;
 import puzzles.common.solver.Configuration;
+import puzzles.common.solver.SolvabilityMemo;
 import puzzles.common.solver.Solver;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Model that represents a game of solitare chess
@@ -17,6 +22,11 @@ import java.util.List;
  * @author Nick Creeley
  */
 public class ChessModel {
+
+    /**
+     * Most configs the solvability memo keeps before it is cleared
+     */
+    private static final int MEMO_LIMIT = 1 << 20;
     /**
      * the collection of observers of this model
      */
@@ -31,6 +41,57 @@ public class ChessModel {
 
     private String currentFile;
 
+    /**
+     * Path of the last hint solve, reused while the board stays on it
+     */
+    private List<Configuration> hintPath;
+
+    /**
+     * Position of the current config in hintPath
+     */
+    private int hintIndex;
+
+    /**
+     * Solver of the hint that is running, null if there is none
+     */
+    private Solver hintSolver;
+
+    /**
+     * Solvability of every config checked so far, kept while the same puzzle is played
+     */
+    private final SolvabilityMemo solvability = new SolvabilityMemo(MEMO_LIMIT);
+
+    /**
+     * Prebuilt table for the size of the current puzzle, null if there is none
+     */
+    private Tablebase tablebase;
+
+    /**
+     * If the current config is solvable, null until it is checked
+     */
+    private Boolean solvable;
+
+    /**
+     * Squares the selected piece can capture
+     */
+    private Set<Coordinates> captures = Set.of();
+
+    /**
+     * Captures of the selected piece as moves
+     */
+    private List<Integer> selectedMoves = List.of();
+
+    /**
+     * Squares the selected piece can capture and leave the puzzle solvable, null until
+     * they are checked
+     */
+    private Set<Coordinates> safeCaptures = Set.of();
+
+    /**
+     * The solvability check that is running, null if there is none
+     */
+    private SolvabilityCheck check;
+
     /**
      * The view calls this to add itself as an observer.
      *
@@ -65,6 +126,8 @@ public class ChessModel {
 
         this.currentFile = filename;
 
+        useTablebase();
+
     }
 
     /**
@@ -82,15 +145,16 @@ public class ChessModel {
             if (selected == null) {
                 alertObservers("Invalid selection " + position);
             } else {
-                alertObservers("Cannot capture from " + selected + " to " + position);
-                selected = null;
+                Coordinates start = selected;
+                select(null);
+                alertObservers("Cannot capture from " + start + " to " + position);
             }
         } else {
 
             //check if other has already been selected
 
             if (selected == null) {
-                this.selected = position;
+                select(position);
                 alertObservers("Selected " + position);
             } else {
 
@@ -102,6 +166,8 @@ public class ChessModel {
 
                 char piece = currentConfig.getPiece(selected.row(), selected.col());
 
+                select(null);
+
                 switch (piece) {
 
                     case ChessConfig.king -> {
@@ -114,10 +180,7 @@ public class ChessModel {
 
                         if ((rowShift == 0 || rowShift == 1) && (colShift == 0 || colShift == 1)) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.king);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.king);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
@@ -133,10 +196,7 @@ public class ChessModel {
 
                         if (Math.abs(rowShift) == Math.abs(colShift) || rowShift == 0 || colShift == 0) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.queen);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.queen);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
@@ -153,10 +213,7 @@ public class ChessModel {
 
                         if ((rowShift == 2 && colShift == 1) || (rowShift == 1 && colShift == 2)) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.knight);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.knight);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
@@ -173,10 +230,7 @@ public class ChessModel {
 
                         if (rowShift > 0 && Math.abs(colShift) == 1) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.pawn);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.pawn);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
@@ -193,10 +247,7 @@ public class ChessModel {
 
                         if (Math.abs(rowShift) == Math.abs(colShift)) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.bishop);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.bishop);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
@@ -213,23 +264,46 @@ public class ChessModel {
 
                         if (rowShift == 0 || colShift == 0) {
 
-                            currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
-                            currentConfig.setPiece(end.row(), end.col(), ChessConfig.rook);
-
-                            alertObservers("Captured from " + start + " to " + end);
+                            capture(start, end, ChessConfig.rook);
 
                         } else {
                             alertObservers("Cannot capture from " + start + " to " + end);
                         }
                     }
                 }
-                this.selected = null;
             }
         }
 
     }
 
 
+    /**
+     * Moves a piece onto the piece it captures and keeps the hint path if the
+     * capture is the next step of it
+     *
+     * @param start square of the capturing piece
+     * @param end   square of the captured piece
+     * @param piece the capturing piece
+     */
+    private void capture(Coordinates start, Coordinates end, char piece) {
+
+        cancelHint();
+
+        cancelCheck();
+
+        currentConfig.setPiece(start.row(), start.col(), ChessConfig.empty);
+        currentConfig.setPiece(end.row(), end.col(), piece);
+        solvable = null;
+
+        if (hintPath != null && hintIndex + 1 < hintPath.size() && hintPath.get(hintIndex + 1).equals(currentConfig)) {
+            hintIndex++;
+        } else {
+            hintPath = null;
+        }
+
+        alertObservers("Captured from " + start + " to " + end);
+    }
+
     /**
      * Resets the current model back to its beginning state
      */
@@ -250,13 +324,26 @@ public class ChessModel {
 
     public void load(String filename) throws IOException {
 
+        cancelHint();
+
+        cancelCheck();
+
         try {
             this.currentConfig = new ChessConfig(filename);
 
-            this.selected = null;
+            if (!filename.equals(currentFile)) {
+                solvability.clear();
+                useTablebase();
+            }
+
+            select(null);
+
+            this.solvable = null;
 
             this.currentFile = filename;
 
+            this.hintPath = null;
+
             alertObservers("Loaded: " + filename.substring(filename.lastIndexOf(File.separator) + 1));
         } catch (FileNotFoundException e) {
             alertObservers("Could not find: " + filename.substring(filename.lastIndexOf(File.separator) + 1));
@@ -265,29 +352,259 @@ public class ChessModel {
 
     /**
      * Solves one step of the puzzle if there is a current way to do so.
+     * The path of the solve is kept, so later hints are taken from it without solving
+     * again until a capture, load or reset leaves it.
      */
     public void hint() {
 
+        Solver solver = hintSolver();
+
+        if (solver != null) {
+            solver.solve(false);
+        }
+
+        finishHint(solver);
+    }
+
+    /**
+     * Starts a hint that can be solved on another thread. The returned solver works on a
+     * copy of the board, once it has solved, {@link #finishHint(Solver)} takes the step.
+     *
+     * @return the solver to run, or null if the hint needs no solve
+     */
+    public Solver hintSolver() {
+
+        cancelHint();
+
+        //the check would hold up the hint, it is started again once the hint is done
+
+        cancelCheck();
+
+        if (currentConfig.isSolution() || (hintPath != null && hintPath.get(hintIndex).equals(currentConfig))) {
+            return null;
+        }
+
+        hintSolver = new Solver(copy(currentConfig), tablebase);
+
+        return hintSolver;
+    }
+
+    /**
+     * Takes the next step of a hint started by {@link #hintSolver()}.
+     * The solver is ignored if the hint was cancelled or another hint was started since.
+     *
+     * @param solver the finished solver, or null if the hint needed no solve
+     */
+    public void finishHint(Solver solver) {
+
+        if (solver != hintSolver) {
+            return;
+        }
+
+        hintSolver = null;
+
         if (currentConfig.isSolution()) {
             alertObservers("Already solved!");
         } else {
-            Solver solver = new Solver(currentConfig);
 
-            solver.solve(false);
+            if (solver != null) {
+
+                //an unsolvable board is kept as a path that goes nowhere
+
+                hintPath = solver.getPath().isEmpty() ? List.of(copy(currentConfig)) : solver.getPath();
+                hintIndex = 0;
 
-            Configuration nextstep = solver.getNextStep();
+                for (Configuration step : hintPath) {
+                    solvability.remember((ChessConfig) step, !solver.getPath().isEmpty());
+                }
+            }
 
-            if (nextstep == null) {
+            if (hintIndex + 1 == hintPath.size()) {
                 alertObservers("No solution!");
 
             } else {
-                currentConfig = (ChessConfig) nextstep;
+                hintIndex++;
+
+                //copy the step so captures on the board do not change the path
+
+                currentConfig = copy(hintPath.get(hintIndex));
+                select(null);
+                solvable = null;
                 alertObservers("Next Step!");
             }
         }
 
     }
 
+    /**
+     * Cancels the hint that is being solved, if any
+     */
+    public void cancelHint() {
+
+        if (hintSolver != null) {
+            hintSolver.cancel();
+            hintSolver = null;
+        }
+    }
+
+    /**
+     * Looks for a tablebase of the current board size, hints and solvability checks on
+     * boards it covers are then lookups instead of searches
+     */
+    private void useTablebase() {
+
+        tablebase = Tablebase.forBoard(getMaxRow(), getMaxCol());
+
+        solvability.setTable(tablebase);
+    }
+
+    /**
+     * Starts a check of whether the current config can still be solved and which captures
+     * of the selected piece are safe. The check works on a copy of the board and can be run
+     * on another thread, once it has run {@link #finishCheck(SolvabilityCheck)} keeps what
+     * it found. Configs seen before on the same puzzle, by earlier checks or hints, are
+     * answered without searching again.
+     *
+     * @return the check to run, or null if everything is already known
+     */
+    public SolvabilityCheck solvabilityCheck() {
+
+        cancelCheck();
+
+        if (Boolean.FALSE.equals(solvable) && selected != null && safeCaptures == null) {
+            safeCaptures = Set.of();
+        }
+
+        if (solvable != null && (selected == null || safeCaptures != null)) {
+            return null;
+        }
+
+        check = new SolvabilityCheck(copy(currentConfig), solvability, solvable == null,
+                selected == null || safeCaptures != null ? null : selectedMoves);
+
+        return check;
+    }
+
+    /**
+     * Keeps what a check started by {@link #solvabilityCheck()} found.
+     * The check is ignored if it was cancelled or the board has changed since.
+     *
+     * @param check the check that has run
+     * @return true if the check was kept
+     */
+    public boolean finishCheck(SolvabilityCheck check) {
+
+        if (check != this.check || check.isCancelled()) {
+            return false;
+        }
+
+        this.check = null;
+
+        if (check.checksBoard()) {
+            solvable = check.isSolvable();
+        }
+
+        if (check.getSafeCaptures() != null) {
+            safeCaptures = check.getSafeCaptures();
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancels the solvability check that is running, if any
+     */
+    public void cancelCheck() {
+
+        if (check != null) {
+            check.cancel();
+            check = null;
+        }
+    }
+
+    /**
+     * Gets if the current config can still be solved, as found by the last check
+     *
+     * @return true if the puzzle is solvable from here, null if it has not been checked
+     */
+    public Boolean getSolvable() {
+        return solvable;
+    }
+
+    /**
+     * Gets the squares the selected piece can capture
+     *
+     * @return the captures, empty if nothing is selected
+     */
+    public Set<Coordinates> getCaptures() {
+        return captures;
+    }
+
+    /**
+     * Gets the squares the selected piece can capture and still leave the puzzle solvable
+     *
+     * @return the safe captures, empty if nothing is selected, null if they have not been checked
+     */
+    public Set<Coordinates> getSafeCaptures() {
+        return safeCaptures;
+    }
+
+    /**
+     * Selects a piece and finds its captures, which of them are safe is left to the next
+     * {@link #solvabilityCheck()}
+     *
+     * @param position the piece, or null to clear the selection
+     */
+    private void select(Coordinates position) {
+
+        cancelCheck();
+
+        this.selected = position;
+
+        if (position == null) {
+            captures = Set.of();
+            selectedMoves = List.of();
+            safeCaptures = Set.of();
+            return;
+        }
+
+        int from = position.row() * getMaxCol() + position.col();
+
+        List<Integer> moves = new ArrayList<>();
+
+        currentConfig.forEachNeighbor(move -> {
+            if (ChessConfig.moveFrom(move) == from) {
+                moves.add(move);
+            }
+            return true;
+        });
+
+        captures = moves.stream()
+                .map(this::target)
+                .collect(Collectors.toUnmodifiableSet());
+
+        selectedMoves = moves;
+
+        safeCaptures = null;
+    }
+
+    /**
+     * Gets the square a move captures on
+     */
+    private Coordinates target(int move) {
+        return new Coordinates(ChessConfig.moveTo(move) / getMaxCol(), ChessConfig.moveTo(move) % getMaxCol());
+    }
+
+    /**
+     * Copies a config from the hint path
+     */
+    private static ChessConfig copy(Configuration config) {
+
+        ChessConfig chessConfig = (ChessConfig) config;
+
+        return new ChessConfig(chessConfig.getGeometry(), chessConfig.pack(), 0);
+    }
+
     /**
      * Gets the piece at a certain spot
      *
@@ -0,0 +1,108 @@
+package puzzles.chess.model;
+
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.MoveOrdering;
+
+import java.util.Arrays;
+
+/**
+ * Move orderings that look at the chess position, for {@link puzzles.common.solver.DepthFirstSolver}.
+ * <p>
+ * Both rules are read off the captures themselves: the pieces that can capture a square
+ * are the captures that end on it, and the mobility of a piece is the captures that start
+ * from it. Isolated first tries captures of the pieces the fewest others can reach, since
+ * a piece nothing can reach any more makes the board unsolvable. Keep mobile tries captures
+ * of the pieces with the fewest captures of their own first, so the pieces that reach the
+ * most are left on the board. Ties keep scan order.
+ *
+ * @author Nick Creeley
+ */
+public class ChessOrdering implements MoveOrdering {
+
+    private final boolean isolatedFirst;
+
+    private final boolean keepMobile;
+
+    private int[] attackers = new int[0];
+
+    private int[] mobility = new int[0];
+
+    private long[] scored = new long[16];
+
+    private int[] sorted = new int[16];
+
+    private ChessOrdering(boolean isolatedFirst, boolean keepMobile) {
+        this.isolatedFirst = isolatedFirst;
+        this.keepMobile = keepMobile;
+    }
+
+    /**
+     * Tries captures of the pieces the fewest others can capture first
+     *
+     * @return a new ordering
+     */
+    public static ChessOrdering isolatedFirst() {
+        return new ChessOrdering(true, false);
+    }
+
+    /**
+     * Tries captures of the pieces with the fewest captures of their own first
+     *
+     * @return a new ordering
+     */
+    public static ChessOrdering keepMobile() {
+        return new ChessOrdering(false, true);
+    }
+
+    /**
+     * Isolated first, then keep mobile between captures of equally isolated pieces
+     *
+     * @return a new ordering
+     */
+    public static ChessOrdering combined() {
+        return new ChessOrdering(true, true);
+    }
+
+    @Override
+    public void order(Configuration config, int[] moves, int count, int depth) {
+
+        int squares = ((ChessConfig) config).getGeometry().getSquares();
+
+        if (attackers.length < squares) {
+            attackers = new int[squares];
+            mobility = new int[squares];
+        }
+        if (scored.length < count) {
+            scored = new long[Math.max(count, scored.length * 2)];
+            sorted = new int[scored.length];
+        }
+
+        for (int i = 0; i < count; i++) {
+            attackers[ChessConfig.moveTo(moves[i])]++;
+            mobility[ChessConfig.moveFrom(moves[i])]++;
+        }
+
+        //sort by score, then by position so equal scores keep their order
+
+        for (int i = 0; i < count; i++) {
+
+            int to = ChessConfig.moveTo(moves[i]);
+
+            long score = (isolatedFirst ? (long) attackers[to] << 16 : 0) + (keepMobile ? mobility[to] : 0);
+
+            scored[i] = (score << 24) | i;
+        }
+
+        Arrays.sort(scored, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            sorted[i] = moves[(int) (scored[i] & 0xFFFFFF)];
+        }
+
+        for (int i = 0; i < count; i++) {
+            moves[i] = sorted[i];
+            attackers[ChessConfig.moveTo(sorted[i])] = 0;
+            mobility[ChessConfig.moveFrom(sorted[i])] = 0;
+        }
+    }
+}
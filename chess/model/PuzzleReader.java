@@ -0,0 +1,350 @@
+package puzzles.chess.model;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads chess puzzles one after another from a file or stream.
+ * <p>
+ * Each puzzle is in the format of the files in data/chess: a line with the rows and
+ * columns, then one line per row with a piece or '.' for each column, separated by spaces.
+ * Puzzles may follow each other directly or be separated by blank lines, and lines
+ * starting with '#' are skipped, so they can be used as headers.
+ * <p>
+ * The input is read in blocks through a channel and scanned byte by byte, each board is
+ * packed as it is read and no line or token strings are made. Puzzles are only read
+ * when the iterator or stream asks for them.
+ *
+ * @author Nick Creeley
+ */
+public class PuzzleReader implements Iterator<ChessConfig>, Closeable {
+
+    /**
+     * Bytes read from the channel at a time
+     */
+    private static final int BLOCK = 1 << 16;
+
+    private final ReadableByteChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+
+    private final String source;
+
+    /**
+     * Line the next byte is on, for error messages
+     */
+    private int line = 1;
+
+    private boolean eof;
+
+    /**
+     * The puzzle read ahead by hasNext, null if it has not been read
+     */
+    private ChessConfig next;
+
+    /**
+     * Creates a reader of a channel
+     *
+     * @param channel the channel, closed when the reader is closed
+     * @param source  name of the input used in error messages
+     */
+    public PuzzleReader(ReadableByteChannel channel, String source) {
+
+        this.channel = channel;
+        this.source = source;
+
+        buffer.flip();
+    }
+
+    /**
+     * Creates a reader of a stream, such as System.in
+     *
+     * @param in     the stream, closed when the reader is closed
+     * @param source name of the input used in error messages
+     */
+    public PuzzleReader(InputStream in, String source) {
+        this(Channels.newChannel(in), source);
+    }
+
+    /**
+     * Creates a reader of a file
+     *
+     * @param filename the file
+     * @throws IOException if the file can not be opened
+     */
+    public PuzzleReader(String filename) throws IOException {
+        this(new FileInputStream(filename).getChannel(), filename);
+    }
+
+    /**
+     * Streams every puzzle of a file, the file is closed when the stream is
+     *
+     * @param filename the file
+     * @return the puzzles in the order they are in the file
+     * @throws IOException if the file can not be opened
+     */
+    public static Stream<ChessConfig> stream(String filename) throws IOException {
+        return new PuzzleReader(filename).stream();
+    }
+
+    /**
+     * Streams the puzzles that have not been read yet, closing the stream closes the reader
+     *
+     * @return the puzzles, read as the stream is used
+     */
+    public Stream<ChessConfig> stream() {
+
+        Spliterator<ChessConfig> puzzles = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(puzzles, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Checks if there is another puzzle
+     *
+     * @return true if there is
+     * @throws UncheckedIOException if the input can not be read or is not in the format
+     */
+    @Override
+    public boolean hasNext() {
+
+        if (next == null) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return next != null;
+    }
+
+    /**
+     * Reads the next puzzle
+     *
+     * @return the puzzle
+     * @throws NoSuchElementException if there are no more puzzles
+     * @throws UncheckedIOException   if the input can not be read or is not in the format
+     */
+    @Override
+    public ChessConfig next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        ChessConfig puzzle = next;
+        next = null;
+
+        return puzzle;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads one puzzle
+     *
+     * @return the puzzle, or null at the end of the input
+     */
+    private ChessConfig read() throws IOException {
+
+        //skip blank lines and headers
+
+        int c = skipSpaces();
+
+        while (c == '\n' || c == '\r' || c == '#') {
+            if (c == '#') {
+                while (c != '\n' && c != -1) {
+                    c = nextByte();
+                }
+            }
+            c = skipSpaces();
+        }
+
+        if (c == -1) {
+            return null;
+        }
+
+        int rows = readInt(c);
+        int cols = readInt(skipSpaces());
+
+        endLine();
+
+        BoardGeometry geometry;
+
+        try {
+            geometry = BoardGeometry.of(rows, cols);
+        } catch (IllegalArgumentException e) {
+            throw error(e.getMessage());
+        }
+
+        long[] packed = new long[geometry.getPackedLength()];
+
+        int square = 0;
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+
+                c = skipSpaces();
+
+                if (c == -1 || c == '\n' || c == '\r') {
+                    throw error("Expected " + cols + " squares in row " + row);
+                }
+
+                int code;
+
+                try {
+                    code = ChessConfig.pieceCode((char) c);
+                } catch (IllegalArgumentException e) {
+                    throw error(e.getMessage());
+                }
+
+                packed[square / ChessConfig.SQUARES_PER_WORD] |=
+                        (long) code << (square % ChessConfig.SQUARES_PER_WORD) * ChessConfig.BITS_PER_SQUARE;
+                square++;
+
+                int after = peekByte();
+
+                if (after != ' ' && after != '\t' && after != '\n' && after != '\r' && after != -1) {
+                    throw error("Expected one character per square");
+                }
+            }
+
+            endLine();
+        }
+
+        return new ChessConfig(geometry, packed, 0);
+    }
+
+    /**
+     * Reads a positive number starting with a byte that was already read
+     */
+    private int readInt(int c) throws IOException {
+
+        if (c < '0' || c > '9') {
+            throw error("Expected a number");
+        }
+
+        long value = c - '0';
+
+        while (peekByte() >= '0' && peekByte() <= '9') {
+            value = value * 10 + (nextByte() - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw error("Number too large");
+            }
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Skips spaces and tabs
+     *
+     * @return the first other byte, or -1 at the end of the input
+     */
+    private int skipSpaces() throws IOException {
+
+        int c = nextByte();
+
+        while (c == ' ' || c == '\t') {
+            c = nextByte();
+        }
+
+        return c;
+    }
+
+    /**
+     * Reads the rest of a line, which may only hold spaces
+     */
+    private void endLine() throws IOException {
+
+        int c = skipSpaces();
+
+        if (c == '\r') {
+            c = nextByte();
+        }
+
+        if (c != '\n' && c != -1) {
+            throw error("Unexpected '" + (char) c + "'");
+        }
+    }
+
+    private int nextByte() throws IOException {
+
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+
+        int c = buffer.get() & 0xFF;
+
+        if (c == '\n') {
+            line++;
+        }
+
+        return c;
+    }
+
+    private int peekByte() throws IOException {
+
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * Reads the next block of the input
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+
+        if (eof) {
+            return false;
+        }
+
+        buffer.clear();
+
+        int read = 0;
+
+        while (read == 0) {
+            read = channel.read(buffer);
+        }
+
+        buffer.flip();
+
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException(source + " line " + line + ": " + message);
+    }
+}
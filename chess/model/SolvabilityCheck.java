@@ -0,0 +1,109 @@
+package puzzles.chess.model;
+
+import puzzles.common.Coordinates;
+import puzzles.common.solver.SolvabilityMemo;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+/**
+ * Finds if a board can still be solved and which captures of the selected piece keep it
+ * solvable. Made by {@link ChessModel#solvabilityCheck()} on a copy of the board, so it can
+ * be run on another thread, then handed back with {@link ChessModel#finishCheck(SolvabilityCheck)}.
+ *
+ * @author Nick Creeley
+ */
+public class SolvabilityCheck {
+
+    private final ChessConfig board;
+
+    private final SolvabilityMemo memo;
+
+    /**
+     * Whether the board still has to be checked, false if the model already knows
+     */
+    private final boolean checkBoard;
+
+    /**
+     * Captures of the selected piece to check, null if nothing is selected
+     */
+    private final List<Integer> moves;
+
+    private volatile boolean cancelled;
+
+    private boolean solvable;
+
+    private Set<Coordinates> safeCaptures;
+
+    /**
+     * Creates a check
+     *
+     * @param board      copy of the board, it is not changed
+     * @param memo       the memo of the puzzle
+     * @param checkBoard whether to check the board itself
+     * @param moves      captures of the selected piece, or null if nothing is selected
+     */
+    SolvabilityCheck(ChessConfig board, SolvabilityMemo memo, boolean checkBoard, List<Integer> moves) {
+
+        this.board = board;
+        this.memo = memo;
+        this.checkBoard = checkBoard;
+        this.moves = moves;
+    }
+
+    /**
+     * Runs the check, each capture is checked in parallel
+     *
+     * @throws CancellationException if the check was cancelled
+     */
+    public void run() {
+
+        if (checkBoard) {
+            solvable = memo.isSolvable(board, this::isCancelled);
+        }
+
+        if (moves != null && checkBoard && !solvable) {
+            safeCaptures = Set.of();
+        } else if (moves != null) {
+            safeCaptures = moves.parallelStream()
+                    .filter(move -> memo.isSolvableAfter(board, move, this::isCancelled))
+                    .map(move -> new Coordinates(board.getGeometry().row(ChessConfig.moveTo(move)),
+                            board.getGeometry().col(ChessConfig.moveTo(move))))
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    /**
+     * Stops the check, a running check then throws a {@link CancellationException}.
+     * Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if the check was cancelled
+     *
+     * @return true if it was
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean checksBoard() {
+        return checkBoard;
+    }
+
+    boolean isSolvable() {
+        return solvable;
+    }
+
+    /**
+     * Gets the safe captures found, null if nothing was selected
+     */
+    Set<Coordinates> getSafeCaptures() {
+        return safeCaptures;
+    }
+}
@@ -3,6 +3,7 @@ package puzzles.chess.ptui;
 import puzzles.common.Coordinates;
 import puzzles.common.Observer;
 import puzzles.chess.model.ChessModel;
+import puzzles.chess.model.SolvabilityCheck;
 
 import java.io.File;
 import java.io.IOException;
@@ -81,6 +82,22 @@ public class ChessPTUI implements Observer<ChessModel, String> {
 
         System.out.println(printBoard(model));
 
+        //the console waits for the check, there is nothing else for it to do
+
+        SolvabilityCheck check = model.solvabilityCheck();
+
+        if (check != null) {
+            check.run();
+            model.finishCheck(check);
+        }
+
+        System.out.println(model.getSolvable() ? "Solvable" : "Unsolvable");
+
+        if (!model.getCaptures().isEmpty()) {
+            System.out.println("Captures: " + model.getCaptures());
+            System.out.println("Safe captures: " + model.getSafeCaptures());
+        }
+
     }
 
     private void displayHelp() {
@@ -1,6 +1,11 @@
 package puzzles.chess.solver;
 
 import puzzles.chess.model.ChessConfig;
+import puzzles.chess.tablebase.Tablebase;
+import puzzles.common.solver.DepthFirstSolver;
+import puzzles.common.solver.ExternalSolver;
+import puzzles.common.solver.ParallelSolver;
+import puzzles.common.solver.SolutionCounter;
 import puzzles.common.solver.Solver;
 
 import java.io.IOException;
@@ -13,24 +18,48 @@ import java.io.IOException;
 
 public class Chess {
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java Chess filename");
+        String mode = args.length == 2 ? args[0] : "";
+
+        if (args.length != 1 && !mode.equals("-parallel") && !mode.equals("-dfs") && !mode.equals("-count")
+                && !mode.equals("-external")) {
+            System.out.println("Usage: java Chess [-parallel | -dfs | -count | -external] filename");
         }
         else{
 
+            String filename = args[args.length - 1];
+
             try{
-                System.out.println("File: " + args[0]);
+                System.out.println("File: " + filename);
 
-                ChessConfig init = new ChessConfig(args[0]);
+                ChessConfig init = new ChessConfig(filename);
 
                 System.out.println(init);
 
-                Solver solver = new Solver(init);
-                solver.solve(true);
+                if (mode.equals("-parallel")) {
+                    ParallelSolver solver = new ParallelSolver(init);
+                    solver.solve(true);
+                } else if (mode.equals("-dfs")) {
+                    DepthFirstSolver solver = new DepthFirstSolver(init);
+                    solver.solve(true);
+                } else if (mode.equals("-external")) {
+                    ExternalSolver solver = new ExternalSolver(init);
+                    solver.solve(true);
+                } else if (mode.equals("-count")) {
+                    SolutionCounter counter = new SolutionCounter(init);
+                    long solutions = counter.count();
+                    System.out.println("Solutions: " + (solutions == Long.MAX_VALUE ? "at least " : "") + solutions);
+                    System.out.println("Counted configs: " + counter.getCountedSize());
+                } else {
+                    Solver solver = new Solver(init, Tablebase.forBoard(init.getMaxRow(), init.getMaxCol()));
+                    solver.solve(true);
+                }
             }
             catch (IOException e){
                 System.out.println(e.getMessage());
             }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
 
         }
     }
@@ -0,0 +1,325 @@
+package puzzles.chess.solver;
+
+import puzzles.chess.model.ChessConfig;
+import puzzles.chess.model.PuzzleReader;
+import puzzles.common.solver.Solver;
+import puzzles.common.solver.SolverStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Solves a whole corpus of chess puzzles in one JVM.
+ * <p>
+ * Puzzles are solved concurrently on a bounded pool and one record is printed per
+ * puzzle as soon as it is solved, as NDJSON by default or CSV. Each record has the
+ * file, whether it is solvable, the number of moves in the solution, the configs
+ * explored, the solve time, the bytes held by the solver's visited table at the end of
+ * the solve and the bytes allocated by the thread that solved it.
+ * <p>
+ * A file may hold many puzzles, read one at a time by {@link PuzzleReader}, and - reads
+ * puzzles from standard input. Puzzles after the first one of a file are named file#n.
+ * <p>
+ * Usage: java ChessBatch [-csv] [-threads n] file | directory | glob | - ...
+ *
+ * @author Nick Creeley
+ */
+public class ChessBatch {
+
+    /**
+     * Header of the CSV output, in the order of {@link Result#toCsv()}
+     */
+    private static final String CSV_HEADER = "file,solvable,pathLength,configs,millis,tableBytes,allocatedBytes,error";
+
+    /**
+     * The outcome of one puzzle
+     *
+     * @param file           the puzzle file
+     * @param solvable       whether the puzzle has a solution
+     * @param pathLength     number of moves in the solution, 0 if there is none
+     * @param configs        unique configs explored
+     * @param millis         wall time of the solve
+     * @param tableBytes     bytes held by the visited table at the end of the solve
+     * @param allocatedBytes bytes allocated on the heap during the solve, -1 if the JVM
+     *                       can not measure it
+     * @param error          message if the puzzle could not be read, otherwise null
+     */
+    private record Result(String file, boolean solvable, int pathLength, long configs,
+                          long millis, long tableBytes, long allocatedBytes, String error) {
+
+        String toJson() {
+            return "{\"file\":\"" + escape(file) + "\",\"solvable\":" + solvable
+                    + ",\"pathLength\":" + pathLength + ",\"configs\":" + configs
+                    + ",\"millis\":" + millis + ",\"tableBytes\":" + tableBytes
+                    + ",\"allocatedBytes\":" + allocatedBytes
+                    + (error == null ? "" : ",\"error\":\"" + escape(error) + "\"") + "}";
+        }
+
+        String toCsv() {
+            return quote(file) + "," + solvable + "," + pathLength + "," + configs + "," + millis
+                    + "," + tableBytes + "," + allocatedBytes + "," + (error == null ? "" : quote(error));
+        }
+
+        /**
+         * Escapes a string for a JSON value, control characters included so a record
+         * always stays on one line
+         */
+        private static String escape(String text) {
+
+            StringBuilder escaped = new StringBuilder(text.length());
+
+            for (int i = 0; i < text.length(); i++) {
+
+                char c = text.charAt(i);
+
+                switch (c) {
+                    case '\\' -> escaped.append("\\\\");
+                    case '"' -> escaped.append("\\\"");
+                    case '\n' -> escaped.append("\\n");
+                    case '\r' -> escaped.append("\\r");
+                    case '\t' -> escaped.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            escaped.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            escaped.append(c);
+                        }
+                    }
+                }
+            }
+
+            return escaped.toString();
+        }
+
+        private static String quote(String text) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        boolean csv = false;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        boolean stdin = false;
+
+        List<String> patterns = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-csv")) {
+                csv = true;
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-")) {
+                stdin = true;
+            } else {
+                patterns.add(args[i]);
+            }
+        }
+
+        TreeSet<Path> files = new TreeSet<>();
+
+        for (String pattern : patterns) {
+            files.addAll(findFiles(pattern));
+        }
+
+        if (files.isEmpty() && !stdin) {
+            System.out.println("Usage: java ChessBatch [-csv] [-threads n] file | directory | glob | - ...");
+            return;
+        }
+
+        PrintStream out = System.out;
+
+        if (csv) {
+            out.println(CSV_HEADER);
+        }
+
+        boolean asCsv = csv;
+
+        Consumer<Result> print = result -> {
+            synchronized (out) {
+                out.println(asCsv ? result.toCsv() : result.toJson());
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        //bounds the puzzles read ahead of the solves, a file may hold millions
+
+        Semaphore pending = new Semaphore(threads * 4);
+
+        try {
+            for (Path file : files) {
+
+                PuzzleReader in;
+
+                try {
+                    in = new PuzzleReader(file.toString());
+                } catch (IOException e) {
+                    print.accept(error(file.toString(), e, System.nanoTime()));
+                    continue;
+                }
+
+                solveAll(file.toString(), in, pool, pending, print);
+            }
+
+            if (stdin) {
+                solveAll("-", new PuzzleReader(System.in, "-"), pool, pending, print);
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Reads every puzzle of one input and hands each to the pool as soon as it is read
+     *
+     * @param source  name of the input
+     * @param in      the puzzles, closed once they are all read
+     * @param pool    solves the puzzles
+     * @param pending permits for puzzles read but not solved yet
+     * @param print   prints each result
+     */
+    private static void solveAll(String source, PuzzleReader in, ExecutorService pool, Semaphore pending,
+                                 Consumer<Result> print) throws IOException, InterruptedException {
+
+        int index = 0;
+
+        try (in) {
+            while (in.hasNext()) {
+
+                ChessConfig puzzle = in.next();
+
+                String name = index == 0 ? source : source + "#" + index;
+                index++;
+
+                pending.acquire();
+
+                pool.submit(() -> {
+                    try {
+                        print.accept(solve(name, puzzle));
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            print.accept(error(index == 0 ? source : source + "#" + index, e.getCause(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Solves one puzzle
+     *
+     * @param name   name of the puzzle
+     * @param puzzle the puzzle
+     * @return the outcome
+     */
+    private static Result solve(String name, ChessConfig puzzle) {
+
+        long start = System.nanoTime();
+
+        long allocated = allocatedBytes();
+
+        try {
+            Solver solver = new Solver(puzzle);
+
+            SolverStats stats = solver.solve(false);
+
+            int[] moves = solver.getMoves();
+
+            return new Result(name, moves != null, moves == null ? 0 : moves.length, stats.getVisitedSize(),
+                    (System.nanoTime() - start) / 1_000_000, stats.getVisitedBytes(),
+                    allocated == -1 ? -1 : allocatedBytes() - allocated, null);
+
+        } catch (RuntimeException e) {
+            return error(name, e, start);
+        }
+    }
+
+    /**
+     * Makes the record of a puzzle that could not be read or solved
+     */
+    private static Result error(String name, Exception e, long start) {
+        return new Result(name, false, 0, 0, (System.nanoTime() - start) / 1_000_000, 0, -1,
+                e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
+    /**
+     * Gets the bytes allocated on the heap by the current thread so far
+     *
+     * @return the bytes, or -1 if the JVM can not measure them
+     */
+    private static long allocatedBytes() {
+
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the puzzle files of a file name, a directory or a glob such as data/chess/chess-*.txt
+     *
+     * @param pattern the argument given
+     * @return the files, empty if none match
+     * @throws IOException if a directory can not be listed
+     */
+    private static List<Path> findFiles(String pattern) throws IOException {
+
+        int wildcard = -1;
+
+        for (int i = 0; i < pattern.length() && wildcard == -1; i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) != -1) {
+                wildcard = i;
+            }
+        }
+
+        if (wildcard == -1) {
+
+            Path path = Paths.get(pattern);
+
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> listing = Files.list(path)) {
+                    return listing.filter(Files::isRegularFile).toList();
+                }
+            }
+            return Files.isRegularFile(path) ? List.of(path) : List.of();
+        }
+
+        //walk from the last directory before the first wildcard
+
+        int separator = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf(File.separatorChar, wildcard));
+
+        Path base = Paths.get(separator == -1 ? "." : pattern.substring(0, separator + 1));
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(file -> separator == -1 ? base.relativize(file) : file)
+                    .filter(matcher::matches)
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package puzzles.chess.tablebase;
+
+import puzzles.chess.model.ChessConfig;
+import puzzles.common.solver.PackedConfiguration;
+import puzzles.common.solver.PositionTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table written by {@link TablebaseGenerator}, read straight from the file.
+ * <p>
+ * Each level of keys is memory mapped and searched in place, so nothing is copied onto
+ * the heap and every JVM that opens the same file shares it through the page cache.
+ * A lookup packs the board to its key and binary searches the keys with the same
+ * number of pieces. Lookups only read the mapped buffers, so one table can be shared
+ * by any number of threads.
+ *
+ * @author Nick Creeley
+ */
+public class Tablebase implements PositionTable {
+
+    /**
+     * System property naming the directory {@link #forBoard(int, int)} looks in
+     */
+    public static final String DIRECTORY_PROPERTY = "chess.tablebases";
+
+    /**
+     * Directory used when the property is not set
+     */
+    public static final String DEFAULT_DIRECTORY = "data/chess/tablebases";
+
+    /**
+     * Tables opened by {@link #forBoard(int, int)}, by file name
+     */
+    private static final Map<Path, Optional<Tablebase>> OPEN = new ConcurrentHashMap<>();
+
+    private final int rows;
+
+    private final int cols;
+
+    /**
+     * The sorted keys of the boards with i + 1 pieces at index i
+     */
+    private final LongBuffer[] levels;
+
+    /**
+     * Maps a tablebase file
+     *
+     * @param file the file
+     * @throws IOException if the file can not be read or is not a tablebase
+     */
+    public Tablebase(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (channel.size() < TablebaseGenerator.HEADER_BYTES) {
+                throw new IOException("Not a tablebase: " + file);
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TablebaseGenerator.HEADER_BYTES);
+
+            if (header.getInt(0) != TablebaseGenerator.MAGIC) {
+                throw new IOException("Not a tablebase: " + file);
+            }
+            if (header.getInt(4) != TablebaseGenerator.VERSION) {
+                throw new IOException("Unsupported tablebase version " + header.getInt(4) + ": " + file);
+            }
+
+            this.rows = header.getInt(8);
+            this.cols = header.getInt(12);
+
+            int maxPieces = header.getInt(16);
+
+            long offset = TablebaseGenerator.HEADER_BYTES + (long) maxPieces * Long.BYTES;
+
+            if (channel.size() < offset) {
+                throw new IOException("Truncated tablebase: " + file);
+            }
+
+            LongBuffer counts = channel.map(FileChannel.MapMode.READ_ONLY, TablebaseGenerator.HEADER_BYTES,
+                    (long) maxPieces * Long.BYTES).asLongBuffer();
+
+            this.levels = new LongBuffer[maxPieces];
+
+            for (int level = 0; level < maxPieces; level++) {
+
+                long bytes = counts.get(level) * Long.BYTES;
+
+                if (bytes > Integer.MAX_VALUE || offset + bytes > channel.size()) {
+                    throw new IOException("Bad level of " + (level + 1) + " pieces: " + file);
+                }
+
+                levels[level] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes).asLongBuffer();
+                offset += bytes;
+            }
+        }
+    }
+
+    /**
+     * Gets the table of a board size from the tablebase directory, the file of a
+     * rows x cols board is named rowsxcols.tb. Each file is only mapped once.
+     *
+     * @param rows rows of the board
+     * @param cols columns of the board
+     * @return the table, or null if there is none for the size
+     * @throws UncheckedIOException if the file is there but can not be read
+     */
+    public static Tablebase forBoard(int rows, int cols) {
+
+        Path file = Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY), rows + "x" + cols + ".tb");
+
+        return OPEN.computeIfAbsent(file.toAbsolutePath(), path -> {
+
+            if (!Files.isRegularFile(path)) {
+                return Optional.empty();
+            }
+
+            try {
+                return Optional.of(new Tablebase(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).orElse(null);
+    }
+
+    @Override
+    public boolean covers(PackedConfiguration config) {
+
+        if (!(config instanceof ChessConfig board)) {
+            return false;
+        }
+
+        int pieces = board.getPiecesLeft();
+
+        return board.getMaxRow() == rows && board.getMaxCol() == cols
+                && pieces >= 1 && pieces <= levels.length;
+    }
+
+    @Override
+    public boolean isSolvable(PackedConfiguration config) {
+
+        long[] key = new long[1];
+        config.packKey(key, 0);
+
+        return contains(levels[((ChessConfig) config).getPiecesLeft() - 1], key[0]);
+    }
+
+    /**
+     * Binary searches a level for a key
+     */
+    private static boolean contains(LongBuffer level, long key) {
+
+        int low = 0;
+        int high = level.limit() - 1;
+
+        while (low <= high) {
+
+            int mid = (low + high) >>> 1;
+            long value = level.get(mid);
+
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the most pieces a board the table covers can have
+     *
+     * @return the maximum pieces
+     */
+    public int getMaxPieces() {
+        return levels.length;
+    }
+}
@@ -0,0 +1,449 @@
+package puzzles.chess.tablebase;
+
+import puzzles.chess.model.BoardGeometry;
+import puzzles.chess.model.ChessConfig;
+import puzzles.common.solver.KeyFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the table of every solvable board of one size up to a number of pieces.
+ * <p>
+ * The game is walked backwards from the boards with a single piece, which are the goals.
+ * Each capture that could have led to a board is taken back, with every piece as the one
+ * captured, so the boards with k + 1 pieces that can be solved are exactly the boards one
+ * capture back from the solvable boards with k pieces. A board is solvable if it is in the
+ * table and unsolvable if it has no more than the maximum pieces but is not in the table.
+ * Every capture takes one piece, so the distance of a solvable board to the goal is its
+ * pieces minus one.
+ * <p>
+ * Boards are stored by their one word {@link ChessConfig#packKey(long[], int)}, so only
+ * boards of at most {@link ChessConfig#SQUARES_PER_WORD} squares are supported.
+ * <p>
+ * Levels are kept on disk like the levels of {@link puzzles.common.solver.ExternalSolver},
+ * so a table can have more boards than fit in the heap. The last level is read back in
+ * chunks that are expanded in parallel on a fixed pool, with only a few chunks in flight
+ * at once. The boards found are collected in a buffer of fixed size that is sorted and
+ * written out as a run each time it fills, then the runs are merged into the file of the
+ * next level. Each level is copied to the table as soon as the next one is built.
+ * <p>
+ * The file is big endian: the int {@link #MAGIC}, the int {@link #VERSION}, the rows,
+ * columns and maximum pieces as ints, an int of padding, then the long count of boards
+ * with 1 to the maximum pieces, then the keys of each count in turn, sorted ascending.
+ * <p>
+ * Usage: java TablebaseGenerator [-threads n] rows cols maxPieces file
+ *
+ * @author Nick Creeley
+ */
+public class TablebaseGenerator {
+
+    /**
+     * First int of a tablebase file
+     */
+    public static final int MAGIC = 0x53435442;
+
+    /**
+     * Version of the file layout
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Bytes before the counts
+     */
+    public static final int HEADER_BYTES = 24;
+
+    /**
+     * Boards expanded by one task
+     */
+    private static final int CHUNK = 1 << 10;
+
+    /**
+     * Bytes of boards collected before a run is written
+     */
+    private static final int RUN_BYTES = 64 << 20;
+
+    private static final char[] PIECES = {ChessConfig.bishop, ChessConfig.rook, ChessConfig.queen,
+            ChessConfig.knight, ChessConfig.king, ChessConfig.pawn};
+
+    private final BoardGeometry geometry;
+
+    private final int maxPieces;
+
+    private final ExecutorService pool;
+
+    /**
+     * Most chunks expanded or waiting for their boards to be collected at once
+     */
+    private final int inFlight;
+
+    /**
+     * Creates a generator for one board size
+     *
+     * @param rows      rows of the board
+     * @param cols      columns of the board
+     * @param maxPieces the most pieces a board in the table has
+     * @param pool      runs the expansion of each level
+     * @param threads   threads of the pool, twice this many chunks are in flight at once
+     */
+    public TablebaseGenerator(int rows, int cols, int maxPieces, ExecutorService pool, int threads) {
+
+        if (rows * cols > ChessConfig.SQUARES_PER_WORD) {
+            throw new IllegalArgumentException("Boards of more than " + ChessConfig.SQUARES_PER_WORD
+                    + " squares are not supported: " + rows + "x" + cols);
+        }
+
+        this.geometry = BoardGeometry.of(rows, cols);
+        this.maxPieces = Math.min(maxPieces, rows * cols);
+        this.pool = pool;
+        this.inFlight = Math.max(1, threads * 2);
+    }
+
+    /**
+     * Finds the solvable boards with each number of pieces and writes them to a file in the
+     * tablebase layout. The levels are built in a work directory next to the file, and the
+     * header is written last so a file cut short is never read as a table.
+     *
+     * @param file the file
+     * @return the number of boards with i + 1 pieces at index i
+     * @throws IOException          if the file or a level can not be written
+     * @throws InterruptedException if the generator is interrupted
+     */
+    public long[] generate(Path file) throws IOException, InterruptedException {
+
+        long[] counts = new long[maxPieces];
+
+        Path work = Files.createTempDirectory(file.toAbsolutePath().getParent(), "tablebase");
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            writeFully(out, ByteBuffer.allocate(HEADER_BYTES + maxPieces * Long.BYTES));
+
+            long[] goals = new long[PIECES.length * geometry.getSquares()];
+
+            int size = 0;
+
+            for (int square = 0; square < geometry.getSquares(); square++) {
+                for (char piece : PIECES) {
+                    goals[size++] = key(new ChessConfig(geometry, new long[]{
+                            (long) ChessConfig.pieceCode(piece) << (square * ChessConfig.BITS_PER_SQUARE)}, 0));
+                }
+            }
+
+            Path level = work.resolve("level-1");
+
+            counts[0] = writeRun(goals, size, level);
+
+            for (int pieces = 1; pieces < maxPieces; pieces++) {
+
+                Path next = work.resolve("level-" + (pieces + 1));
+
+                counts[pieces] = expand(level, next, work);
+
+                append(out, level);
+                Files.delete(level);
+
+                level = next;
+            }
+
+            append(out, level);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + maxPieces * Long.BYTES);
+
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(geometry.getRows());
+            header.putInt(geometry.getCols());
+            header.putInt(maxPieces);
+            header.putInt(0);
+
+            for (long count : counts) {
+                header.putLong(count);
+            }
+
+            header.flip();
+            out.position(0);
+            writeFully(out, header);
+        } finally {
+            KeyFiles.deleteAll(work);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Finds the boards one capture back from a level, a chunk of the level per task
+     *
+     * @param level the file of the level
+     * @param next  the file the boards found are merged into
+     * @param work  directory the runs are written in
+     * @return number of boards found
+     */
+    private long expand(Path level, Path next, Path work) throws IOException, InterruptedException {
+
+        List<Path> runs = new ArrayList<>();
+
+        long[] run = new long[RUN_BYTES / Long.BYTES];
+
+        int runSize = 0;
+
+        //chunks are read as the pool frees up, so the level is never all in the heap
+
+        Deque<Future<long[]>> chunks = new ArrayDeque<>();
+
+        try (KeyFiles.Reader in = new KeyFiles.Reader(level, 1)) {
+
+            long[] key = new long[1];
+
+            boolean more = true;
+
+            while (more || !chunks.isEmpty()) {
+
+                while (more && chunks.size() < inFlight) {
+
+                    long[] chunk = new long[CHUNK];
+
+                    int size = 0;
+
+                    while (size < CHUNK && (more = in.next(key))) {
+                        chunk[size++] = key[0];
+                    }
+
+                    if (size > 0) {
+                        int count = size;
+                        chunks.add(pool.submit(() -> expand(chunk, count)));
+                    }
+                }
+
+                if (chunks.isEmpty()) {
+                    break;
+                }
+
+                long[] found = chunks.poll().get();
+
+                for (int copied = 0; copied < found.length; ) {
+
+                    int length = Math.min(found.length - copied, run.length - runSize);
+
+                    System.arraycopy(found, copied, run, runSize, length);
+                    copied += length;
+                    runSize += length;
+
+                    if (runSize == run.length) {
+                        runs.add(work.resolve(next.getFileName() + "-run-" + runs.size()));
+                        writeRun(run, runSize, runs.get(runs.size() - 1));
+                        runSize = 0;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<long[]> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+
+        if (runSize > 0) {
+            runs.add(work.resolve(next.getFileName() + "-run-" + runs.size()));
+            writeRun(run, runSize, runs.get(runs.size() - 1));
+        }
+
+        return KeyFiles.mergeRuns(runs, next, 1);
+    }
+
+    /**
+     * Sorts the first keys of an array and writes them to a file without repeats
+     *
+     * @return number of keys written
+     */
+    private static long writeRun(long[] keys, int size, Path file) throws IOException {
+
+        Arrays.parallelSort(keys, 0, size);
+
+        long written = 0;
+
+        try (KeyFiles.Writer out = new KeyFiles.Writer(file, 1)) {
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || keys[i] != keys[i - 1]) {
+                    out.write(keys, i);
+                    written++;
+                }
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Copies a level to the end of the table
+     */
+    private static void append(FileChannel out, Path level) throws IOException {
+
+        try (FileChannel in = FileChannel.open(level, StandardOpenOption.READ)) {
+
+            long size = in.size();
+
+            for (long copied = 0; copied < size; ) {
+                copied += in.transferTo(copied, size - copied, out);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Takes back every capture of part of a level
+     */
+    private long[] expand(long[] chunk, int size) {
+
+        ChessConfig board = new ChessConfig(geometry, new long[1], 0);
+
+        KeyBuffer found = new KeyBuffer();
+
+        long[] state = new long[1];
+
+        for (int index = 0; index < size; index++) {
+
+            state[0] = chunk[index];
+            board.unpack(state, 0);
+
+            //the boards with no pawns stand for all of their symmetric boards, but a board
+            //a pawn is put back on has fewer symmetries, so those come from every image
+
+            int symmetries = board.getSymmetryCount() > 2 ? board.getSymmetryCount() : 1;
+
+            for (int symmetry = 0; symmetry < symmetries; symmetry++) {
+
+                ChessConfig image = symmetry == 0 ? board : board.transform(symmetry);
+
+                boolean pawnsOnly = symmetry != 0;
+
+                image.forEachUncapture(move -> {
+                    for (char piece : PIECES) {
+
+                        if (pawnsOnly && piece != ChessConfig.pawn) {
+                            continue;
+                        }
+
+                        image.uncapture(move, piece);
+                        found.add(key(image));
+
+                        image.recapture(move);
+                    }
+                    return true;
+                });
+            }
+        }
+
+        return sortUnique(found.keys, found.size);
+    }
+
+    /**
+     * Keys found by one task, grown as needed
+     */
+    private static class KeyBuffer {
+
+        private long[] keys = new long[1024];
+
+        private int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    /**
+     * Gets the one word key of a board
+     */
+    private static long key(ChessConfig board) {
+
+        long[] key = new long[1];
+        board.packKey(key, 0);
+
+        return key[0];
+    }
+
+    /**
+     * Sorts the first keys of an array and drops the repeats
+     */
+    private static long[] sortUnique(long[] keys, int size) {
+
+        Arrays.parallelSort(keys, 0, size);
+
+        int unique = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) {
+                keys[unique++] = keys[i];
+            }
+        }
+
+        return Arrays.copyOf(keys, unique);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        List<String> rest = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                rest.add(args[i]);
+            }
+        }
+
+        if (rest.size() != 4) {
+            System.out.println("Usage: java TablebaseGenerator [-threads n] rows cols maxPieces file");
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            TablebaseGenerator generator = new TablebaseGenerator(Integer.parseInt(rest.get(0)),
+                    Integer.parseInt(rest.get(1)), Integer.parseInt(rest.get(2)), pool, threads);
+
+            long start = System.currentTimeMillis();
+
+            long[] counts = generator.generate(Paths.get(rest.get(3)));
+
+            long total = 0;
+
+            for (int pieces = 1; pieces <= counts.length; pieces++) {
+                System.out.println("Pieces " + pieces + ": " + counts[pieces - 1] + " solvable boards");
+                total += counts[pieces - 1];
+            }
+
+            System.out.println("Wrote " + total + " boards to " + rest.get(3) + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
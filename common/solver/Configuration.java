@@ -1,6 +1,7 @@
 package puzzles.common.solver;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * The representation of a single configuration for a puzzle.
@@ -14,12 +15,58 @@ public interface Configuration {
      */
     boolean isSolution();
 
+    /**
+     * Checks if the configuration can be proven to have no solution without searching it.
+     * Solvers do not expand a configuration this returns true for. By default nothing is
+     * proven.
+     *
+     * @return true only if no solution can be reached from the configuration
+     */
+    default boolean isDeadEnd() {
+        return false;
+    }
+
     /**
      * Get the collection of neighbors from the current configuration.
      * @return All the neighbors
      */
     Collection<Configuration> getNeighbors();
 
+    /**
+     * Visits the moves to the neighbors of the current configuration without building them.
+     * By default a move is the position of the neighbor in {@link #getNeighbors()}.
+     *
+     * @param sink receives each move, and may stop the visit by returning false
+     * @return true if every move was visited, false if the sink stopped early
+     */
+    default boolean forEachNeighbor(NeighborSink sink) {
+
+        int size = getNeighbors().size();
+
+        for (int move = 0; move < size; move++) {
+            if (!sink.accept(move)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the neighbor a move leads to
+     *
+     * @param move a move given by {@link #forEachNeighbor(NeighborSink)}
+     * @return the neighbor
+     */
+    default Configuration applyMove(int move) {
+
+        Iterator<Configuration> neighbors = getNeighbors().iterator();
+
+        for (int skip = 0; skip < move; skip++) {
+            neighbors.next();
+        }
+        return neighbors.next();
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////
     // The predecessor map from the BFS Solver forces any puzzle configuration          //
     // to override the equals and hashCode methods.                                     //
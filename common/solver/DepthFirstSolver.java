@@ -0,0 +1,386 @@
+package puzzles.common.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A Solver using DFS that stops at the first solution.
+ * Configurations proven to have no solution are remembered so they are never expanded
+ * twice. Only the current path is kept besides that, so memory follows the depth of the
+ * search instead of the width of a BFS frontier. This suits puzzles where every solution
+ * is at the same depth, like solitaire chess where each move removes one piece.
+ * Moves are tried in the order the configuration gives them unless a {@link MoveOrdering}
+ * is given.
+ *
+ * @author Nick Creeley
+ */
+public class DepthFirstSolver {
+
+    /**
+     * Number of dead states the table starts with room for
+     */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final Configuration initConfig;
+
+    private final MoveOrdering ordering;
+
+    /**
+     * Move buffers of each depth, reused when an ordering is used
+     */
+    private int[][] depthMoves = new int[0][];
+
+    private Configuration nextStep;
+
+    private StateTable deadStates;
+
+    private Set<Configuration> deadConfigs;
+
+    private long[] key;
+
+    private long totalConfigs;
+
+    private int expandedConfigs;
+
+    private long deadHits;
+
+    private int depth;
+
+    private int peakDepth;
+
+    private volatile SolverStats stats;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates the solver with the initial config
+     *
+     * @param initConfig the initial config
+     */
+    public DepthFirstSolver(Configuration initConfig) {
+        this(initConfig, null);
+    }
+
+    /**
+     * Creates the solver with the initial config and the order to try moves in
+     *
+     * @param initConfig the initial config
+     * @param ordering   sorts the moves of each config, null to try them in the order given
+     */
+    public DepthFirstSolver(Configuration initConfig, MoveOrdering ordering) {
+
+        this.initConfig = initConfig;
+
+        this.ordering = ordering;
+
+        this.nextStep = null;
+    }
+
+    /**
+     * Solves the configuration puzzle using DFS
+     * Packed configurations remember dead states in a {@link StateTable}, any other
+     * configuration falls back to a set.
+     *
+     * @param print whether to print the counters and the path
+     * @return the stats of the solve, the peak frontier is the deepest path searched
+     * @throws CancellationException if {@link #cancel()} was called during the solve
+     */
+    public SolverStats solve(boolean print) {
+
+        SolverStats solveStats = new SolverStats("DepthFirstSolver");
+        this.stats = solveStats;
+
+        try {
+            search(print);
+        } finally {
+            solveStats.finish();
+            deadStates = null;
+            deadConfigs = null;
+            key = null;
+        }
+
+        return solveStats;
+    }
+
+    /**
+     * Stops a running solve, the solve then throws a {@link CancellationException}.
+     * Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Runs the search and builds the path
+     */
+    private void search(boolean print) {
+
+        Configuration start = initConfig;
+
+        if (initConfig instanceof PackedConfiguration packed) {
+            deadStates = new StateTable(packed.packedLength(), INITIAL_CAPACITY);
+            key = new long[packed.packedLength()];
+
+            //walk the tree on a copy so moves can be made in place
+
+            packed.pack(key, 0);
+            start = packed.fromPacked(key, 0);
+        } else {
+            deadConfigs = new HashSet<>();
+        }
+
+        totalConfigs = 1;
+
+        expandedConfigs = 0;
+
+        deadHits = 0;
+
+        depth = 0;
+
+        peakDepth = 0;
+
+        List<Integer> moves = new ArrayList<>();
+
+        List<Configuration> path = new ArrayList<>();
+
+        if (search(start, moves)) {
+
+            //moves were added while unwinding, replay them from the start
+
+            Collections.reverse(moves);
+
+            Configuration current = initConfig;
+            path.add(current);
+
+            for (int move : moves) {
+                current = current.applyMove(move);
+                path.add(current);
+            }
+
+            if (path.size() > 1) {
+                nextStep = path.get(1);
+            }
+        }
+
+        updateStats();
+
+        if (print) {
+
+            //only dead configs are remembered, so there is no count of distinct configs
+
+            Solver.printResult(path, totalConfigs, "Dead configs",
+                    deadStates == null ? deadConfigs.size() : deadStates.size());
+        }
+    }
+
+    /**
+     * Gets the stats of the current or last solve, they can be read while the solve runs
+     *
+     * @return the stats, null before the first solve
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * If there is a solution gets the next step in puzzle
+     *
+     * @return null if no solution or config of next step
+     */
+    public Configuration getNextStep() {
+        return nextStep;
+    }
+
+    /**
+     * Searches below a config, on success the moves from the config to the goal are
+     * added to the end of moves backwards. A packed config is searched in place and is
+     * left on the goal when a solution is found.
+     *
+     * @return true if a solution was found
+     */
+    private boolean search(Configuration current, List<Integer> moves) {
+
+        if (current.isSolution()) {
+            return true;
+        }
+
+        if (cancelled) {
+            throw new CancellationException("Solve cancelled");
+        }
+
+        if (current.isDeadEnd()) {
+            return false;
+        }
+
+        expandedConfigs++;
+
+        if (expandedConfigs % SolverStats.UPDATE_INTERVAL == 0) {
+            updateStats();
+        }
+
+        boolean exhausted = ordering == null ? searchNeighbors(current, moves) : searchOrdered(current, moves);
+
+        if (!exhausted) {
+            return true;
+        }
+
+        markDead(current);
+
+        return false;
+    }
+
+    /**
+     * Searches the neighbors in the order the config gives them
+     *
+     * @return true if every neighbor was searched without a solution
+     */
+    private boolean searchNeighbors(Configuration current, List<Integer> moves) {
+
+        depth++;
+        peakDepth = Math.max(peakDepth, depth);
+
+        boolean exhausted = current.forEachNeighbor(move -> {
+
+            totalConfigs++;
+
+            if (searchMove(current, move, moves)) {
+                moves.add(move);
+                return false;
+            }
+            return true;
+        });
+
+        depth--;
+
+        return exhausted;
+    }
+
+    /**
+     * Collects the moves of the config, lets the ordering sort them and searches them in
+     * that order
+     *
+     * @return true if every neighbor was searched without a solution
+     */
+    private boolean searchOrdered(Configuration current, List<Integer> moves) {
+
+        int at = depth;
+
+        if (at >= depthMoves.length) {
+            depthMoves = Arrays.copyOf(depthMoves, Math.max(at + 1, depthMoves.length * 2));
+        }
+        if (depthMoves[at] == null) {
+            depthMoves[at] = new int[16];
+        }
+
+        int[] count = {0};
+
+        current.forEachNeighbor(move -> {
+            if (count[0] == depthMoves[at].length) {
+                depthMoves[at] = Arrays.copyOf(depthMoves[at], count[0] * 2);
+            }
+            depthMoves[at][count[0]++] = move;
+            return true;
+        });
+
+        int[] ordered = depthMoves[at];
+
+        ordering.order(current, ordered, count[0], at);
+
+        depth++;
+        peakDepth = Math.max(peakDepth, depth);
+
+        boolean exhausted = true;
+
+        for (int i = 0; i < count[0] && exhausted; i++) {
+
+            totalConfigs++;
+
+            if (searchMove(current, ordered[i], moves)) {
+                moves.add(ordered[i]);
+                exhausted = false;
+            } else {
+                ordering.failed(ordered[i], at);
+            }
+        }
+
+        depth--;
+
+        return exhausted;
+    }
+
+    /**
+     * Searches below the neighbor a move leads to
+     *
+     * @return true if a solution was found
+     */
+    private boolean searchMove(Configuration current, int move, List<Integer> moves) {
+
+        if (current instanceof PackedConfiguration board) {
+
+            board.makeMove(move);
+
+            if (!isDead(board) && search(board, moves)) {
+                return true;
+            }
+
+            board.unmakeMove();
+            return false;
+        }
+
+        Configuration neighbor = current.applyMove(move);
+
+        return !isDead(neighbor) && search(neighbor, moves);
+    }
+
+    /**
+     * Copies the counters to the stats
+     */
+    private void updateStats() {
+
+        int dead = deadStates == null ? deadConfigs.size() : deadStates.size();
+
+        stats.update(expandedConfigs, totalConfigs - 1, deadHits, dead, peakDepth);
+
+        if (deadStates != null) {
+            stats.updateTable(deadStates.getLoadFactor(), deadStates.getBytes());
+        }
+    }
+
+    /**
+     * Checks if a config has already been proven unsolvable
+     */
+    private boolean isDead(Configuration config) {
+
+        boolean dead;
+
+        if (deadStates == null) {
+            dead = deadConfigs.contains(config);
+        } else {
+            ((PackedConfiguration) config).packKey(key, 0);
+            dead = deadStates.find(key, 0) != -1;
+        }
+
+        if (dead) {
+            deadHits++;
+        }
+        return dead;
+    }
+
+    /**
+     * Remembers that a config is unsolvable
+     */
+    private void markDead(Configuration config) {
+
+        if (deadStates == null) {
+            deadConfigs.add(config);
+        } else {
+            ((PackedConfiguration) config).packKey(key, 0);
+            deadStates.insert(key, 0, StateTable.NO_PARENT);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package puzzles.common.solver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A BFS solver that keeps its levels on disk instead of in the heap, for searches with more
+ * configurations than fit in memory.
+ * <p>
+ * Each level is a file of distinct packed keys in sorted order. A level is read one block
+ * at a time and the keys of its neighbors are collected in a buffer of fixed size. Each
+ * time the buffer fills it is sorted and written out as a run without duplicates, and when
+ * the level is done the runs are merged into the file of the next level, dropping the keys
+ * that appear in more than one run. Every read and write is sequential through
+ * {@link KeyFiles}, so the heap only ever holds the run buffer and one block per run.
+ * <p>
+ * Duplicates are only removed within a level. That is all a puzzle needs when a
+ * configuration can only ever be on one level, like solitaire chess where every capture
+ * removes a piece, and is what the solver is meant for. No parents are stored, the path is
+ * found afterwards by reading the levels back from the goal and finding a key on each
+ * level with the later step as a neighbor.
+ *
+ * @author Nick Creeley
+ */
+public class ExternalSolver {
+
+    /**
+     * Bytes of neighbor keys collected before a run is written, by default
+     */
+    public static final int DEFAULT_RUN_BYTES = 64 << 20;
+
+    private final PackedConfiguration initConfig;
+
+    private final Path directory;
+
+    private final int width;
+
+    private final int runCapacity;
+
+    private Configuration nextStep;
+
+    private List<Configuration> path;
+
+    private PackedConfiguration board;
+
+    private long[] run;
+
+    private int runSize;
+
+    private List<Path> runs;
+
+    private Path work;
+
+    private long[] goal;
+
+    private long totalConfigs;
+
+    private volatile SolverStats stats;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates the solver with the initial config, writing its levels to the temp directory
+     *
+     * @param initConfig the initial config
+     */
+    public ExternalSolver(PackedConfiguration initConfig) {
+        this(initConfig, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_BYTES);
+    }
+
+    /**
+     * Creates the solver with the initial config
+     *
+     * @param initConfig the initial config
+     * @param directory  directory the levels and runs are written in, each solve uses a new
+     *                   directory inside it that is deleted afterwards
+     * @param runBytes   bytes of neighbor keys kept in the heap before they are written out
+     */
+    public ExternalSolver(PackedConfiguration initConfig, Path directory, int runBytes) {
+
+        this.initConfig = initConfig;
+
+        this.directory = directory;
+
+        this.width = initConfig.packedLength();
+
+        this.runCapacity = Math.max(1, runBytes / (width * Long.BYTES));
+
+        this.nextStep = null;
+
+        this.path = List.of();
+    }
+
+    /**
+     * Solves the configuration puzzle using BFS with the levels on disk
+     *
+     * @param print whether to print the counters and the path
+     * @return the stats of the solve, the visited size is the keys written to every level
+     * @throws IOException           if a level or run can not be written or read
+     * @throws CancellationException if {@link #cancel()} was called during the solve
+     */
+    public SolverStats solve(boolean print) throws IOException {
+
+        SolverStats solveStats = new SolverStats("ExternalSolver");
+        this.stats = solveStats;
+
+        work = Files.createTempDirectory(directory, "bfs");
+
+        try {
+            search(print);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            solveStats.finish();
+            board = null;
+            run = null;
+            KeyFiles.deleteAll(work);
+        }
+
+        return solveStats;
+    }
+
+    /**
+     * Stops a running solve, the solve then throws a {@link CancellationException}.
+     * Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Gets the stats of the current or last solve, they can be read while the solve runs
+     *
+     * @return the stats, null before the first solve
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Searches one level at a time until a goal is made or a level is empty
+     */
+    private void search(boolean print) throws IOException {
+
+        long[] start = new long[width];
+        initConfig.packKey(start, 0);
+
+        List<Path> levels = new ArrayList<>();
+
+        levels.add(work.resolve("level-0"));
+
+        try (KeyFiles.Writer out = new KeyFiles.Writer(levels.get(0), width)) {
+            out.write(start, 0);
+        }
+
+        goal = initConfig.isSolution() ? start : null;
+
+        run = new long[runCapacity * width];
+
+        board = initConfig.fromPacked(start, 0);
+
+        totalConfigs = 1;
+
+        long expanded = 0;
+
+        long unique = 1;
+
+        long frontier = 1;
+
+        while (goal == null && frontier > 0) {
+
+            long levelNanos = System.nanoTime();
+
+            long levelExpanded = expand(levels.get(levels.size() - 1));
+
+            expanded += levelExpanded;
+
+            Path next = work.resolve("level-" + levels.size());
+
+            frontier = goal == null ? KeyFiles.mergeRuns(runs, next, width) : 0;
+
+            levels.add(next);
+
+            unique += frontier;
+
+            stats.endLevel(System.nanoTime() - levelNanos, levelExpanded);
+            stats.update(expanded, totalConfigs - 1, totalConfigs - unique, unique, frontier);
+        }
+
+        //find a parent for each step of the path, from the goal back to the start
+
+        List<long[]> keys = new ArrayList<>();
+
+        if (goal != null) {
+
+            keys.add(goal);
+
+            for (int level = levels.size() - 2; level >= 0; level--) {
+                keys.add(findParent(levels.get(level), keys.get(keys.size() - 1)));
+            }
+
+            Collections.reverse(keys);
+        }
+
+        path = Solver.orientPath(initConfig, keys);
+
+        if (path.size() > 1) {
+            nextStep = path.get(1);
+        }
+
+        if (print) {
+            Solver.printResult(path, totalConfigs, (int) Math.min(unique, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Makes the neighbors of every config of a level, writing them out as sorted runs
+     *
+     * @return number of configs expanded
+     */
+    private long expand(Path level) throws IOException {
+
+        long expanded = 0;
+
+        runs = new ArrayList<>();
+
+        runSize = 0;
+
+        long[] key = new long[width];
+
+        try (KeyFiles.Reader in = new KeyFiles.Reader(level, width)) {
+
+            while (goal == null && in.next(key)) {
+
+                if (cancelled) {
+                    throw new CancellationException("Solve cancelled");
+                }
+
+                board.unpack(key, 0);
+
+                if (board.isDeadEnd()) {
+                    continue;
+                }
+
+                expanded++;
+
+                board.forEachNeighbor(this::addNeighbor);
+            }
+        }
+
+        if (goal == null && runSize > 0) {
+            spill();
+        }
+
+        return expanded;
+    }
+
+    /**
+     * Adds the key of the neighbor a move leads to to the run, the move is made on the
+     * shared board and taken back once the neighbor is packed
+     *
+     * @return false once a goal has been found
+     */
+    private boolean addNeighbor(int move) {
+
+        totalConfigs++;
+
+        board.makeMove(move);
+        board.packKey(run, runSize * width);
+        boolean solution = board.isSolution();
+        board.unmakeMove();
+
+        if (solution) {
+            goal = Arrays.copyOfRange(run, runSize * width, (runSize + 1) * width);
+            return false;
+        }
+
+        if (++runSize == runCapacity) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the run buffer and writes it out without duplicates
+     */
+    private void spill() throws IOException {
+
+        KeyFiles.sort(run, 0, runSize, width, new long[width]);
+
+        Path file = work.resolve("run-" + runs.size());
+
+        try (KeyFiles.Writer out = new KeyFiles.Writer(file, width)) {
+            for (int index = 0; index < runSize; index++) {
+                if (index == 0 || KeyFiles.compare(run, index - 1, run, index, width) != 0) {
+                    out.write(run, index * width);
+                }
+            }
+        }
+
+        runs.add(file);
+
+        runSize = 0;
+    }
+
+    /**
+     * Finds a config on a level with a neighbor whose key is the given key
+     */
+    private long[] findParent(Path level, long[] child) throws IOException {
+
+        long[] key = new long[width];
+
+        long[] neighbor = new long[width];
+
+        try (KeyFiles.Reader in = new KeyFiles.Reader(level, width)) {
+
+            while (in.next(key)) {
+
+                if (cancelled) {
+                    throw new CancellationException("Solve cancelled");
+                }
+
+                board.unpack(key, 0);
+
+                boolean found = !board.forEachNeighbor(move -> {
+                    board.makeMove(move);
+                    board.packKey(neighbor, 0);
+                    board.unmakeMove();
+                    return !Arrays.equals(neighbor, child);
+                });
+
+                if (found) {
+                    return key;
+                }
+            }
+        }
+
+        throw new IllegalStateException("No config on " + level.getFileName() + " leads to the next step");
+    }
+
+    /**
+     * If there is a solution gets the next step in puzzle
+     *
+     * @return null if no solution or config of next step
+     */
+    public Configuration getNextStep() {
+        return nextStep;
+    }
+
+    /**
+     * Gets the path found by the last solve
+     *
+     * @return the configurations from the start to the goal, empty if there is no solution
+     */
+    public List<Configuration> getPath() {
+        return path;
+    }
+}
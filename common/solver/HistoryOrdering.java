@@ -0,0 +1,87 @@
+package puzzles.common.solver;
+
+import java.util.Arrays;
+
+/**
+ * Orders moves by what happened to them earlier in the same search, for puzzles where
+ * a move means much the same in every configuration it is made from.
+ * <p>
+ * History: each move counts how often the search below it failed, and moves that failed
+ * least are tried first. Killer: the last move that failed at each depth is tried last
+ * at that depth. Ties keep the order of the moves given.
+ *
+ * @author Nick Creeley
+ */
+public class HistoryOrdering implements MoveOrdering {
+
+    /**
+     * Number of failure counters, moves share a counter when their hashes collide
+     */
+    private static final int COUNTERS = 1 << 16;
+
+    /**
+     * Killer of a depth that has none yet, no int move equals it
+     */
+    private static final long NO_KILLER = Long.MIN_VALUE;
+
+    private final int[] failures = new int[COUNTERS];
+
+    private long[] killers = new long[0];
+
+    private long[] scored = new long[16];
+
+    private int[] sorted = new int[16];
+
+    @Override
+    public void order(Configuration config, int[] moves, int count, int depth) {
+
+        if (scored.length < count) {
+            scored = new long[Math.max(count, scored.length * 2)];
+            sorted = new int[scored.length];
+        }
+
+        long killer = depth < killers.length ? killers[depth] : NO_KILLER;
+
+        //sort by score, then by position so equal scores keep their order
+
+        for (int i = 0; i < count; i++) {
+
+            long score = moves[i] == killer ? Integer.MAX_VALUE : failures[slot(moves[i])];
+
+            scored[i] = (score << 32) | i;
+        }
+
+        Arrays.sort(scored, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            sorted[i] = moves[(int) scored[i]];
+        }
+
+        System.arraycopy(sorted, 0, moves, 0, count);
+    }
+
+    @Override
+    public void failed(int move, int depth) {
+
+        int slot = slot(move);
+
+        if (failures[slot] < Integer.MAX_VALUE - 1) {
+            failures[slot]++;
+        }
+
+        if (depth >= killers.length) {
+            int length = killers.length;
+            killers = Arrays.copyOf(killers, Math.max(depth + 1, length * 2));
+            Arrays.fill(killers, length, killers.length, NO_KILLER);
+        }
+
+        killers[depth] = move;
+    }
+
+    private static int slot(int move) {
+
+        int hash = move * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & (COUNTERS - 1);
+    }
+}
@@ -0,0 +1,403 @@
+package puzzles.common.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Files of packed keys stored back to back, for searches that keep their levels on disk.
+ * <p>
+ * Keys are read and written one block at a time through a {@link FileChannel}, so a file
+ * of any size only ever needs one block of memory. A run is a file of distinct keys in
+ * sorted order, and runs are merged into one run by reading all of them at once, so
+ * building a sorted file of more keys than fit in the heap only needs a buffer of keys to
+ * sort before each run is written and one block per run while they are merged.
+ *
+ * @author Nick Creeley
+ */
+public final class KeyFiles {
+
+    /**
+     * Bytes read or written on a channel at a time
+     */
+    public static final int BLOCK_BYTES = 1 << 18;
+
+    /**
+     * Most runs merged at once, more runs are merged in passes
+     */
+    public static final int MAX_MERGE = 64;
+
+    /**
+     * Runs shorter than this many keys are sorted by insertion
+     */
+    private static final int INSERTION_SORT = 16;
+
+    private KeyFiles() {
+    }
+
+    /**
+     * Merges sorted runs into one sorted file of distinct keys, merging them in passes of
+     * at most {@link #MAX_MERGE} runs while there are more than that. The runs and the
+     * files of each pass are deleted as they are merged.
+     *
+     * @param runs   the runs, each sorted without repeats
+     * @param output the merged file, the files of each pass are written next to it
+     * @param width  longs in each key
+     * @return number of keys written
+     * @throws IOException if a run can not be read or a file written
+     */
+    public static long mergeRuns(List<Path> runs, Path output, int width) throws IOException {
+
+        for (int pass = 0; runs.size() > MAX_MERGE; pass++) {
+
+            List<Path> merged = new ArrayList<>();
+
+            for (int first = 0; first < runs.size(); first += MAX_MERGE) {
+
+                Path file = output.resolveSibling(output.getFileName() + "-merge-" + pass + "-" + merged.size());
+
+                merge(runs.subList(first, Math.min(runs.size(), first + MAX_MERGE)), file, width);
+                merged.add(file);
+            }
+
+            runs = merged;
+        }
+
+        return merge(runs, output, width);
+    }
+
+    /**
+     * Merges sorted files into one sorted file of distinct keys and deletes them
+     *
+     * @return number of keys written
+     */
+    private static long merge(List<Path> files, Path output, int width) throws IOException {
+
+        PriorityQueue<Reader> heads = new PriorityQueue<>((a, b) -> compare(a.current, 0, b.current, 0, width));
+
+        //every reader opened, so all are closed before their files are deleted even when
+        //one fails while it is out of the queue
+
+        List<Reader> opened = new ArrayList<>(files.size());
+
+        long[] last = new long[width];
+
+        long written = 0;
+
+        try (Writer out = new Writer(output, width)) {
+
+            for (Path file : files) {
+                Reader in = new Reader(file, width);
+                opened.add(in);
+                if (in.advance()) {
+                    heads.add(in);
+                } else {
+                    in.close();
+                }
+            }
+
+            while (!heads.isEmpty()) {
+
+                Reader in = heads.poll();
+
+                if (written == 0 || compare(last, 0, in.current, 0, width) != 0) {
+                    out.write(in.current, 0);
+                    System.arraycopy(in.current, 0, last, 0, width);
+                    written++;
+                }
+
+                if (in.advance()) {
+                    heads.add(in);
+                } else {
+                    in.close();
+                }
+            }
+        } finally {
+            try {
+                closeAll(opened);
+            } finally {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Closes every reader, even if closing one of them fails
+     *
+     * @throws IOException the first failure, with any later ones suppressed
+     */
+    private static void closeAll(List<Reader> readers) throws IOException {
+
+        IOException failure = null;
+
+        for (Reader in : readers) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sorts keys stored one after another, quicksort on the larger ranges
+     *
+     * @param keys  the keys
+     * @param from  first key to sort
+     * @param to    one past the last key to sort
+     * @param width longs in each key
+     * @param temp  room for one key
+     */
+    public static void sort(long[] keys, int from, int to, int width, long[] temp) {
+
+        while (to - from > INSERTION_SORT) {
+
+            long[] pivot = Arrays.copyOfRange(keys, (from + (to - from) / 2) * width, (from + (to - from) / 2 + 1) * width);
+
+            int low = from;
+            int high = to - 1;
+
+            while (low <= high) {
+                while (compare(keys, low, pivot, 0, width) < 0) {
+                    low++;
+                }
+                while (compare(keys, high, pivot, 0, width) > 0) {
+                    high--;
+                }
+                if (low <= high) {
+                    System.arraycopy(keys, low * width, temp, 0, width);
+                    System.arraycopy(keys, high * width, keys, low * width, width);
+                    System.arraycopy(temp, 0, keys, high * width, width);
+                    low++;
+                    high--;
+                }
+            }
+
+            //recurse into the smaller side so the stack stays shallow
+
+            if (high + 1 - from < to - low) {
+                sort(keys, from, high + 1, width, temp);
+                from = low;
+            } else {
+                sort(keys, low, to, width, temp);
+                to = high + 1;
+            }
+        }
+
+        for (int index = from + 1; index < to; index++) {
+
+            System.arraycopy(keys, index * width, temp, 0, width);
+
+            int hole = index;
+
+            while (hole > from && compare(keys, hole - 1, temp, 0, width) > 0) {
+                System.arraycopy(keys, (hole - 1) * width, keys, hole * width, width);
+                hole--;
+            }
+
+            System.arraycopy(temp, 0, keys, hole * width, width);
+        }
+    }
+
+    /**
+     * Compares two keys word by word
+     *
+     * @param a      keys stored one after another
+     * @param indexA index of the key in a
+     * @param b      keys stored one after another
+     * @param indexB index of the key in b
+     * @param width  longs in each key
+     * @return negative, zero or positive as the first key is less than, equal to or greater
+     * than the second
+     */
+    public static int compare(long[] a, int indexA, long[] b, int indexB, int width) {
+
+        for (int word = 0; word < width; word++) {
+
+            int order = Long.compare(a[indexA * width + word], b[indexB * width + word]);
+
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Deletes a work directory and any files left in it
+     *
+     * @param directory the directory
+     * @throws IOException if a file can not be deleted
+     */
+    public static void deleteAll(Path directory) throws IOException {
+
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Writes keys to a file one block at a time
+     */
+    public static class Writer implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+        private final int width;
+
+        /**
+         * Creates the file, replacing any file already there
+         *
+         * @param file  the file
+         * @param width longs in each key
+         * @throws IOException if the file can not be created
+         */
+        public Writer(Path file, int width) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.width = width;
+        }
+
+        /**
+         * Writes one key
+         *
+         * @param keys   keys stored one after another
+         * @param offset index of the first long of the key
+         * @throws IOException if the block can not be written
+         */
+        public void write(long[] keys, int offset) throws IOException {
+            for (int word = 0; word < width; word++) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.putLong(keys[offset + word]);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads keys from a file one block at a time
+     */
+    public static class Reader implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+        private final int width;
+
+        /**
+         * The key read last by {@link #advance()}
+         */
+        private final long[] current;
+
+        /**
+         * Opens a file
+         *
+         * @param file  the file
+         * @param width longs in each key
+         * @throws IOException if the file can not be opened
+         */
+        public Reader(Path file, int width) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.width = width;
+            this.current = new long[width];
+            buffer.flip();
+        }
+
+        /**
+         * Reads the next key into current
+         *
+         * @return false at the end of the file
+         */
+        boolean advance() throws IOException {
+            return next(current);
+        }
+
+        /**
+         * Reads the next key
+         *
+         * @param key room for the key
+         * @return false at the end of the file
+         * @throws IOException if the file can not be read
+         */
+        public boolean next(long[] key) throws IOException {
+
+            for (int word = 0; word < width; word++) {
+
+                if (buffer.remaining() < Long.BYTES && !fill()) {
+                    return false;
+                }
+                key[word] = buffer.getLong();
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next block, keeping any bytes not read yet
+         *
+         * @return false if there is not a whole long left
+         */
+        private boolean fill() throws IOException {
+
+            buffer.compact();
+
+            int read = 0;
+
+            while (read != -1 && buffer.position() < Long.BYTES) {
+                read = channel.read(buffer);
+            }
+
+            buffer.flip();
+
+            return buffer.remaining() >= Long.BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package puzzles.common.solver;
+
+/**
+ * Decides the order {@link DepthFirstSolver} tries the moves of a configuration in.
+ * An ordering only changes which solution is found first and how fast, the search
+ * still tries every move before it gives up on a configuration.
+ * <p>
+ * An ordering may keep statistics between calls, so each solve should use its own.
+ *
+ * @author Nick Creeley
+ */
+public interface MoveOrdering {
+    /**
+     * Sorts the moves of a configuration, the first move is tried first
+     *
+     * @param config the configuration the moves are from
+     * @param moves  the moves in the order {@link Configuration#forEachNeighbor(NeighborSink)}
+     *               gave them, sorted in place
+     * @param count  number of moves at the start of the array
+     * @param depth  number of moves made from the start to reach the configuration
+     */
+    void order(Configuration config, int[] moves, int count, int depth);
+
+    /**
+     * Told when the search below a move has been exhausted without a solution
+     *
+     * @param move  the move
+     * @param depth depth of the configuration the move was made from
+     */
+    default void failed(int move, int depth) {
+    }
+}
@@ -0,0 +1,19 @@
+package puzzles.common.solver;
+
+/**
+ * Receives the moves of a configuration one at a time from
+ * {@link Configuration#forEachNeighbor(NeighborSink)}.
+ *
+ * @author Nick Creeley
+ */
+@FunctionalInterface
+public interface NeighborSink {
+    /**
+     * Receives one move
+     *
+     * @param move compact description of the move, only meaningful to the configuration
+     *             that made it, see {@link Configuration#applyMove(int)}
+     * @return true to keep visiting moves, false to stop
+     */
+    boolean accept(int move);
+}
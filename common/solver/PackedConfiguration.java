@@ -0,0 +1,72 @@
+package puzzles.common.solver;
+
+/**
+ * A configuration that can be written to and rebuilt from a fixed number of longs.
+ * The BFS solver stores packed configurations in a {@link StateTable} instead of
+ * keeping every configuration object alive, so two configurations must pack to the
+ * same words exactly when they are equal.
+ * <p>
+ * Solvers recognise visited configurations by their key. Configurations that are
+ * symmetric images of each other can share a key so the solver only explores one of them.
+ *
+ * @author Nick Creeley
+ */
+public interface PackedConfiguration extends Configuration {
+    /**
+     * Gets the number of longs used by the packed form of this configuration.
+     * Every configuration reachable from this one must use the same number.
+     *
+     * @return words per packed configuration
+     */
+    int packedLength();
+
+    /**
+     * Writes the packed form of this configuration
+     *
+     * @param dest   array the configuration is written to
+     * @param offset index of the first word written
+     */
+    void pack(long[] dest, int offset);
+
+    /**
+     * Rebuilds a configuration from its packed form
+     *
+     * @param packed the packed configuration
+     * @param offset index of the first word of the configuration
+     * @return a new configuration equal to the one that was packed
+     */
+    PackedConfiguration fromPacked(long[] packed, int offset);
+
+    /**
+     * Overwrites this configuration with a packed configuration of the same puzzle
+     *
+     * @param packed the packed configuration
+     * @param offset index of the first word of the configuration
+     */
+    void unpack(long[] packed, int offset);
+
+    /**
+     * Applies a move in place, so a search can walk the tree on one configuration
+     * instead of copying it for every neighbor
+     *
+     * @param move a move given by {@link #forEachNeighbor(NeighborSink)}
+     */
+    void makeMove(int move);
+
+    /**
+     * Takes back the last move applied with {@link #makeMove(int)}
+     */
+    void unmakeMove();
+
+    /**
+     * Writes the key of this configuration, by default its packed form.
+     * A key must itself be a packed configuration that is solvable in the same number
+     * of steps, since solvers expand the configuration a key unpacks to.
+     *
+     * @param dest   array the key is written to
+     * @param offset index of the first word written
+     */
+    default void packKey(long[] dest, int offset) {
+        pack(dest, offset);
+    }
+}
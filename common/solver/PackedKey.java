@@ -0,0 +1,36 @@
+package puzzles.common.solver;
+
+import java.util.Arrays;
+
+/**
+ * The packed key of a configuration as a map key, compared by its words
+ *
+ * @param words the key written by {@link PackedConfiguration#packKey(long[], int)}
+ * @author Nick Creeley
+ */
+record PackedKey(long[] words) {
+
+    /**
+     * Gets the key of a configuration
+     *
+     * @param config the configuration
+     * @return its key
+     */
+    static PackedKey of(PackedConfiguration config) {
+
+        long[] words = new long[config.packedLength()];
+        config.packKey(words, 0);
+
+        return new PackedKey(words);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PackedKey key && Arrays.equals(words, key.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
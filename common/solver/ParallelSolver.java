@@ -0,0 +1,545 @@
+package puzzles.common.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A level synchronous BFS solver that expands each level of the search on a ForkJoinPool.
+ * <p>
+ * The visited set is split into partitions by hash, each one a {@link StateTable}. A level
+ * is solved in two passes: the frontier is cut into chunks that generate their neighbors
+ * in parallel, then every partition adds the neighbors that hash to it in parallel. Each
+ * partition is only ever touched by one task, so no locks are needed. Neighbors are added
+ * in the same order the single threaded {@link Solver} would find them, which gives the
+ * same parents and therefore the same shortest path.
+ *
+ * @author Nick Creeley
+ */
+public class ParallelSolver {
+
+    /**
+     * Partitions of the visited set for each thread of the pool
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * Fewest frontier configurations handed to one task
+     */
+    private static final int MIN_CHUNK = 64;
+
+    /**
+     * Chunks of the frontier for each thread of the pool, more chunks balance the load better
+     */
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    private final PackedConfiguration initConfig;
+
+    private final ForkJoinPool pool;
+
+    private final int partitionBits;
+
+    private Configuration nextStep;
+
+    private volatile SolverStats stats;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a solver that runs on the common pool
+     *
+     * @param initConfig the initial config
+     */
+    public ParallelSolver(PackedConfiguration initConfig) {
+        this(initConfig, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a solver that runs on the given pool
+     *
+     * @param initConfig the initial config
+     * @param pool       pool the levels are expanded on
+     */
+    public ParallelSolver(PackedConfiguration initConfig, ForkJoinPool pool) {
+
+        this.initConfig = initConfig;
+
+        this.pool = pool;
+
+        int partitions = pool.getParallelism() * PARTITIONS_PER_THREAD;
+        this.partitionBits = 32 - Integer.numberOfLeadingZeros(partitions - 1);
+
+        this.nextStep = null;
+    }
+
+    /**
+     * Solves the configuration puzzle one BFS level at a time
+     *
+     * @param print whether to print the counters and the path
+     * @return the stats of the solve
+     * @throws CancellationException if {@link #cancel()} was called during the solve
+     */
+    public SolverStats solve(boolean print) {
+
+        SolverStats solveStats = new SolverStats("ParallelSolver");
+        this.stats = solveStats;
+
+        try {
+            search(print);
+        } finally {
+            solveStats.finish();
+        }
+
+        return solveStats;
+    }
+
+    /**
+     * Stops a running solve, the solve then throws a {@link CancellationException}.
+     * Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Gets the stats of the current or last solve, they can be read while the solve runs
+     *
+     * @return the stats, null before the first solve
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Runs the level synchronous search
+     */
+    private void search(boolean print) {
+
+        int width = initConfig.packedLength();
+
+        StateTable[] tables = new StateTable[1 << partitionBits];
+
+        for (int partition = 0; partition < tables.length; partition++) {
+            tables[partition] = new StateTable(width, 0);
+        }
+
+        //start the first level with initConfig
+
+        long[] key = new long[width];
+        initConfig.packKey(key, 0);
+
+        int first = partitionOf(key, 0, width);
+        int slot = tables[first].insert(key, 0, StateTable.NO_PARENT);
+
+        List<long[]> levels = new ArrayList<>();
+        long[] frontier = {ref(first, slot)};
+        levels.add(frontier);
+
+        long totalConfigs = 1;
+
+        long expanded = 0;
+
+        List<long[]> keys = new ArrayList<>();
+
+        int goal = initConfig.isSolution() ? 0 : -1;
+
+        //expand levels until a goal is made or the frontier runs out, the first chunk
+        //that made a goal holds the goal the single threaded solver would find
+
+        while (goal == -1 && frontier.length > 0) {
+
+            if (cancelled) {
+                throw new CancellationException("Solve cancelled");
+            }
+
+            long levelNanos = System.nanoTime();
+            long levelExpanded = 0;
+
+            List<Expansion> expansions = expand(frontier, tables, width);
+
+            //chunks stop early when cancelled, so their results are not the whole level
+
+            if (cancelled) {
+                throw new CancellationException("Solve cancelled");
+            }
+
+            for (Expansion expansion : expansions) {
+                totalConfigs += expansion.generated;
+                levelExpanded += expansion.expanded;
+                if (goal == -1 && expansion.goalKey != null) {
+                    keys.add(expansion.goalKey);
+                    goal = expansion.goalParent;
+                }
+            }
+
+            if (goal == -1) {
+                frontier = addNeighbors(expansions, frontier.length, tables, width);
+                levels.add(frontier);
+            }
+
+            expanded += levelExpanded;
+            stats.endLevel(System.nanoTime() - levelNanos, levelExpanded);
+            updateStats(tables, expanded, totalConfigs, goal == -1 ? frontier.length : 0);
+        }
+
+        int uniqueConfigs = 0;
+
+        for (StateTable table : tables) {
+            uniqueConfigs += table.size();
+        }
+
+        //creates path by walking the parent indices back through the levels
+
+        for (int depth = levels.size() - 1, index = goal; goal != -1 && depth >= 0; depth--) {
+
+            long current = levels.get(depth)[index];
+            StateTable table = tables[(int) (current >>> 32)];
+
+            long[] step = new long[width];
+            table.copyState((int) current, step, 0);
+            keys.add(step);
+
+            index = table.getParent((int) current);
+        }
+
+        Collections.reverse(keys);
+
+        List<Configuration> path = Solver.orientPath(initConfig, keys);
+
+        if (path.size() > 1) {
+            nextStep = path.get(1);
+        }
+
+        if (print) {
+            Solver.printResult(path, totalConfigs, uniqueConfigs);
+        }
+    }
+
+    /**
+     * If there is a solution gets the next step in puzzle
+     *
+     * @return null if no solution or config of next step
+     */
+    public Configuration getNextStep() {
+        return nextStep;
+    }
+
+    /**
+     * Copies the counters to the stats, the load factor is the fullest partition's
+     */
+    private void updateStats(StateTable[] tables, long expanded, long totalConfigs, int frontier) {
+
+        long visited = 0;
+        long bytes = 0;
+        double loadFactor = 0;
+
+        for (StateTable table : tables) {
+            visited += table.size();
+            bytes += table.getBytes();
+            loadFactor = Math.max(loadFactor, table.getLoadFactor());
+        }
+
+        stats.update(expanded, totalConfigs - 1, totalConfigs - visited, visited, frontier);
+        stats.updateTable(loadFactor, bytes);
+    }
+
+    /**
+     * Generates the neighbors of every frontier configuration in parallel chunks
+     *
+     * @return the chunks in frontier order
+     */
+    private List<Expansion> expand(long[] frontier, StateTable[] tables, int width) {
+
+        int parallelism = pool.getParallelism();
+        int chunk = Math.max(MIN_CHUNK, frontier.length / (parallelism * CHUNKS_PER_THREAD) + 1);
+
+        List<Expansion> expansions = new ArrayList<>();
+
+        for (int start = 0; start < frontier.length; start += chunk) {
+            expansions.add(new Expansion(frontier, start, Math.min(frontier.length, start + chunk), tables, width));
+        }
+
+        invokeAll(expansions);
+
+        return expansions;
+    }
+
+    /**
+     * Adds the generated neighbors to their partitions in parallel and builds the next frontier
+     *
+     * @return the next frontier in the order the single threaded solver would visit it
+     */
+    private long[] addNeighbors(List<Expansion> expansions, int frontierSize, StateTable[] tables, int width) {
+
+        List<Insertion> insertions = new ArrayList<>();
+
+        for (int partition = 0; partition < tables.length; partition++) {
+            insertions.add(new Insertion(partition, expansions, tables[partition], width));
+        }
+
+        invokeAll(insertions);
+
+        //place the neighbors by parent, then order the few neighbors of each parent
+
+        int[] starts = new int[frontierSize + 1];
+
+        for (Insertion insertion : insertions) {
+            for (int i = 0; i < insertion.size; i++) {
+                starts[(int) (insertion.orders[i] >>> 32) + 1]++;
+            }
+        }
+
+        for (int parent = 0; parent < frontierSize; parent++) {
+            starts[parent + 1] += starts[parent];
+        }
+
+        long[] next = new long[starts[frontierSize]];
+        long[] orders = new long[next.length];
+        int[] positions = Arrays.copyOf(starts, frontierSize);
+
+        for (int partition = 0; partition < insertions.size(); partition++) {
+
+            Insertion insertion = insertions.get(partition);
+
+            for (int i = 0; i < insertion.size; i++) {
+                int position = positions[(int) (insertion.orders[i] >>> 32)]++;
+                orders[position] = insertion.orders[i];
+                next[position] = ref(partition, insertion.slots[i]);
+            }
+        }
+
+        for (int parent = 0; parent < frontierSize; parent++) {
+            for (int i = starts[parent] + 1; i < starts[parent + 1]; i++) {
+                for (int j = i; j > starts[parent] && orders[j - 1] > orders[j]; j--) {
+                    long order = orders[j];
+                    orders[j] = orders[j - 1];
+                    orders[j - 1] = order;
+                    long swap = next[j];
+                    next[j] = next[j - 1];
+                    next[j - 1] = swap;
+                }
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Runs tasks on the pool and waits for all of them
+     */
+    private void invokeAll(List<? extends Callable<Void>> tasks) {
+
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Solve interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Picks the partition of a packed configuration from the high bits of its hash,
+     * the tables use the low bits
+     */
+    private int partitionOf(long[] key, int offset, int width) {
+        return StateTable.hash(key, offset, width) >>> (32 - partitionBits);
+    }
+
+    /**
+     * Makes a reference to a configuration from its partition and slot
+     */
+    private static long ref(int partition, int slot) {
+        return ((long) partition << 32) | slot;
+    }
+
+    /**
+     * Generates the neighbors of one chunk of the frontier, sorted into buckets by partition.
+     * Every neighbor keeps an order made from its parent's frontier index and its position
+     * among the parent's neighbors. The chunk stops at the first goal it makes.
+     */
+    private final class Expansion implements Callable<Void>, NeighborSink {
+
+        private final long[] frontier;
+
+        private final int start;
+
+        private final int end;
+
+        private final StateTable[] tables;
+
+        private final int width;
+
+        private final long[][] states;
+
+        private final long[][] orders;
+
+        private final int[] sizes;
+
+        private long[] key;
+
+        private PackedConfiguration current;
+
+        private long order;
+
+        private long generated;
+
+        private long expanded;
+
+        private long[] goalKey;
+
+        private int goalParent;
+
+        Expansion(long[] frontier, int start, int end, StateTable[] tables, int width) {
+
+            this.frontier = frontier;
+            this.start = start;
+            this.end = end;
+            this.tables = tables;
+            this.width = width;
+
+            this.states = new long[tables.length][];
+            this.orders = new long[tables.length][];
+            this.sizes = new int[tables.length];
+        }
+
+        @Override
+        public Void call() {
+
+            key = new long[width];
+
+            for (int index = start; index < end && !cancelled; index++) {
+
+                StateTable table = tables[(int) (frontier[index] >>> 32)];
+                table.copyState((int) frontier[index], key, 0);
+
+                //one board is reused for the whole chunk
+
+                if (current == null) {
+                    current = initConfig.fromPacked(key, 0);
+                } else {
+                    current.unpack(key, 0);
+                }
+
+                if (current.isDeadEnd()) {
+                    continue;
+                }
+
+                order = (long) index << 32;
+                expanded++;
+
+                if (!current.forEachNeighbor(this)) {
+                    goalKey = key.clone();
+                    goalParent = index;
+                    break;
+                }
+            }
+
+            key = null;
+            current = null;
+
+            return null;
+        }
+
+        @Override
+        public boolean accept(int move) {
+
+            generated++;
+
+            current.makeMove(move);
+            current.packKey(key, 0);
+            boolean solution = current.isSolution();
+            current.unmakeMove();
+
+            if (solution) {
+                return false;
+            }
+
+            add(partitionOf(key, 0, width), key, order++);
+
+            return true;
+        }
+
+        /**
+         * Appends a neighbor to the bucket of its partition
+         */
+        private void add(int partition, long[] key, long order) {
+
+            int size = sizes[partition];
+
+            if (states[partition] == null) {
+                states[partition] = new long[4 * width];
+                orders[partition] = new long[4];
+            } else if (size == orders[partition].length) {
+                states[partition] = Arrays.copyOf(states[partition], size * 2 * width);
+                orders[partition] = Arrays.copyOf(orders[partition], size * 2);
+            }
+
+            System.arraycopy(key, 0, states[partition], size * width, width);
+            orders[partition][size] = order;
+            sizes[partition] = size + 1;
+        }
+    }
+
+    /**
+     * Adds the neighbors of one partition to its table in the order they were made,
+     * keeping the slots and orders of the ones that were new
+     */
+    private static final class Insertion implements Callable<Void> {
+
+        private final int partition;
+
+        private final List<Expansion> expansions;
+
+        private final StateTable table;
+
+        private final int width;
+
+        private long[] orders = new long[16];
+
+        private int[] slots = new int[16];
+
+        private int size;
+
+        Insertion(int partition, List<Expansion> expansions, StateTable table, int width) {
+            this.partition = partition;
+            this.expansions = expansions;
+            this.table = table;
+            this.width = width;
+        }
+
+        @Override
+        public Void call() {
+
+            for (Expansion expansion : expansions) {
+
+                long[] states = expansion.states[partition];
+
+                for (int i = 0; i < expansion.sizes[partition]; i++) {
+
+                    long order = expansion.orders[partition][i];
+                    int slot = table.insert(states, i * width, (int) (order >>> 32));
+
+                    if (slot != -1) {
+                        if (size == slots.length) {
+                            orders = Arrays.copyOf(orders, size * 2);
+                            slots = Arrays.copyOf(slots, size * 2);
+                        }
+                        orders[size] = order;
+                        slots[size++] = slot;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
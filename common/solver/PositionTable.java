@@ -0,0 +1,26 @@
+package puzzles.common.solver;
+
+/**
+ * A prebuilt table of which configurations can be solved. Solvers look positions the
+ * table covers up instead of searching them.
+ *
+ * @author Nick Creeley
+ */
+public interface PositionTable {
+    /**
+     * Checks if the table knows a configuration
+     *
+     * @param config the configuration
+     * @return true if {@link #isSolvable(PackedConfiguration)} answers for it
+     */
+    boolean covers(PackedConfiguration config);
+
+    /**
+     * Looks up whether a covered configuration can be solved, every neighbor of a covered
+     * configuration must be covered as well
+     *
+     * @param config a configuration the table covers
+     * @return true if it is solvable
+     */
+    boolean isSolvable(PackedConfiguration config);
+}
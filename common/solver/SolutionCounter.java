@@ -0,0 +1,341 @@
+package puzzles.common.solver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Counts the distinct move sequences that solve a configuration.
+ * <p>
+ * The count of a configuration is 1 if it is a goal and otherwise the sum of the counts
+ * of its neighbors. Counts are remembered by packed key, symmetric configurations have
+ * the same count, so every configuration is only counted once however many sequences
+ * reach it. Counts saturate at {@link Long#MAX_VALUE}, which means at least that many.
+ * <p>
+ * The configurations a few moves from the start are counted in parallel on a ForkJoinPool,
+ * sharing one memo, then the start is counted from their results. The solutions can also
+ * be paged through one at a time with {@link #solutions()}, which only walks into
+ * configurations with a count above 0.
+ *
+ * @author Nick Creeley
+ */
+public class SolutionCounter {
+
+    /**
+     * Configurations counted in parallel for each thread of the pool, at least
+     */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final PackedConfiguration initConfig;
+
+    private final ForkJoinPool pool;
+
+    private final Map<PackedKey, Long> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the counter with the initial config, counting on the common pool
+     *
+     * @param initConfig the initial config
+     */
+    public SolutionCounter(PackedConfiguration initConfig) {
+        this(initConfig, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the counter with the initial config
+     *
+     * @param initConfig the initial config
+     * @param pool       the pool the subtrees are counted on
+     */
+    public SolutionCounter(PackedConfiguration initConfig, ForkJoinPool pool) {
+
+        this.initConfig = initConfig;
+
+        this.pool = pool;
+    }
+
+    /**
+     * Counts the solutions of the initial config
+     *
+     * @return the number of move sequences that reach a goal, Long.MAX_VALUE if there are
+     * at least that many
+     * @throws InterruptedException if the count is interrupted
+     */
+    public long count() throws InterruptedException {
+
+        List<Callable<Long>> subtrees = new ArrayList<>();
+
+        for (long[] key : frontier()) {
+            subtrees.add(() -> count(initConfig.fromPacked(key, 0)));
+        }
+
+        try {
+            for (Future<Long> subtree : pool.invokeAll(subtrees)) {
+                subtree.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        return count(copy(initConfig));
+    }
+
+    /**
+     * Gets the number of configurations with a remembered count
+     *
+     * @return configurations counted
+     */
+    public int getCountedSize() {
+        return counts.size();
+    }
+
+    /**
+     * Finds the distinct configurations the fewest moves from the start that still give
+     * every thread of the pool enough subtrees to count
+     */
+    private List<long[]> frontier() {
+
+        int target = pool.getParallelism() * TASKS_PER_THREAD;
+
+        List<long[]> level = List.of(pack(initConfig));
+
+        while (!level.isEmpty() && level.size() < target) {
+
+            Set<PackedKey> seen = new HashSet<>();
+
+            List<long[]> next = new ArrayList<>();
+
+            for (long[] key : level) {
+
+                PackedConfiguration board = initConfig.fromPacked(key, 0);
+
+                board.forEachNeighbor(move -> {
+
+                    board.makeMove(move);
+
+                    PackedKey child = PackedKey.of(board);
+
+                    if (seen.add(child)) {
+                        next.add(child.words());
+                    }
+
+                    board.unmakeMove();
+                    return true;
+                });
+            }
+
+            level = next;
+        }
+
+        return level;
+    }
+
+    /**
+     * Counts the solutions below a board, searching in place on it
+     */
+    private long count(PackedConfiguration board) {
+
+        if (board.isSolution()) {
+            return 1;
+        }
+
+        PackedKey key = PackedKey.of(board);
+
+        Long known = counts.get(key);
+
+        if (known != null) {
+            return known;
+        }
+
+        if (board.isDeadEnd()) {
+            counts.put(key, 0L);
+            return 0;
+        }
+
+        long[] total = {0};
+
+        board.forEachNeighbor(move -> {
+            board.makeMove(move);
+            long below = count(board);
+            board.unmakeMove();
+
+            total[0] = total[0] > Long.MAX_VALUE - below ? Long.MAX_VALUE : total[0] + below;
+            return true;
+        });
+
+        counts.put(key, total[0]);
+
+        return total[0];
+    }
+
+    /**
+     * Streams every solution of the initial config, each one found only when the stream
+     * reaches it. Configurations that are not counted yet are counted on the way.
+     *
+     * @return the paths from the initial config to a goal, in move order
+     */
+    public Stream<List<Configuration>> solutions() {
+
+        Spliterator<List<Configuration>> paths = Spliterators.spliteratorUnknownSize(new Paths(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(paths, false);
+    }
+
+    /**
+     * Walks the solutions depth first on one board, keeping the moves of the current path
+     */
+    private class Paths implements Iterator<List<Configuration>> {
+
+        private final PackedConfiguration board = copy(initConfig);
+
+        /**
+         * Moves of each depth and the index of the next one to try
+         */
+        private final List<int[]> moves = new ArrayList<>();
+
+        private final List<Integer> tried = new ArrayList<>();
+
+        private List<Configuration> next;
+
+        /**
+         * Whether the initial config, which may be a goal itself, has been looked at
+         */
+        private boolean started;
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Configuration> next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            List<Configuration> path = next;
+            next = null;
+
+            return path;
+        }
+
+        /**
+         * Finds the next goal after the current path
+         *
+         * @return the path to it, or null if there are no more
+         */
+        private List<Configuration> advance() {
+
+            if (!started) {
+
+                started = true;
+
+                if (board.isSolution()) {
+                    return List.of(initConfig);
+                }
+                if (count(board) == 0) {
+                    return null;
+                }
+                push();
+            }
+
+            while (!moves.isEmpty()) {
+
+                int depth = moves.size() - 1;
+
+                int index = tried.get(depth);
+
+                if (index == moves.get(depth).length) {
+
+                    moves.remove(depth);
+                    tried.remove(depth);
+
+                    if (depth > 0) {
+                        board.unmakeMove();
+                    }
+                    continue;
+                }
+
+                tried.set(depth, index + 1);
+
+                board.makeMove(moves.get(depth)[index]);
+
+                if (board.isSolution()) {
+                    List<Configuration> path = path();
+                    board.unmakeMove();
+                    return path;
+                }
+
+                if (count(board) == 0) {
+                    board.unmakeMove();
+                } else {
+                    push();
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Adds the moves of the board as the next depth
+         */
+        private void push() {
+
+            List<Integer> found = new ArrayList<>();
+
+            board.forEachNeighbor(move -> found.add(move));
+
+            moves.add(found.stream().mapToInt(Integer::intValue).toArray());
+            tried.add(0);
+        }
+
+        /**
+         * Replays the moves taken at each depth from the initial config
+         */
+        private List<Configuration> path() {
+
+            List<Configuration> path = new ArrayList<>();
+
+            Configuration current = initConfig;
+            path.add(current);
+
+            for (int depth = 0; depth < moves.size(); depth++) {
+                current = current.applyMove(moves.get(depth)[tried.get(depth) - 1]);
+                path.add(current);
+            }
+
+            return path;
+        }
+    }
+
+    private static long[] pack(PackedConfiguration config) {
+
+        long[] packed = new long[config.packedLength()];
+        config.pack(packed, 0);
+
+        return packed;
+    }
+
+    private static PackedConfiguration copy(PackedConfiguration config) {
+        return config.fromPacked(pack(config), 0);
+    }
+}
@@ -0,0 +1,199 @@
+package puzzles.common.solver;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Remembers which configurations can still be solved, so that checking a position after
+ * each move only searches the part of the tree that has not been seen yet.
+ * <p>
+ * A check is a depth first search that stops at the first solution, like
+ * {@link DepthFirstSolver}, but every configuration it settles is kept, solvable or not,
+ * and reused by later checks. The memo is safe to use from several threads at once, each
+ * check searches on its own copy of the configuration.
+ * <p>
+ * A memo may be given a limit, it forgets everything once it holds that many
+ * configurations, and a check may be given a flag that stops it part way.
+ *
+ * @author Nick Creeley
+ */
+public class SolvabilityMemo {
+
+    /**
+     * A flag for checks that are never stopped
+     */
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final Map<PackedKey, Boolean> known = new ConcurrentHashMap<>();
+
+    /**
+     * Most configurations remembered before the memo is cleared
+     */
+    private final int limit;
+
+    /**
+     * Table looked up before searching, null if there is none
+     */
+    private volatile PositionTable positions;
+
+    /**
+     * Creates a memo with no limit
+     */
+    public SolvabilityMemo() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a memo that is cleared whenever it reaches a number of configurations
+     *
+     * @param limit most configurations remembered at once
+     */
+    public SolvabilityMemo(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Checks if a configuration can still reach a solution
+     *
+     * @param config the configuration, it is not changed
+     * @return true if it is solvable
+     */
+    public boolean isSolvable(PackedConfiguration config) {
+        return isSolvable(config, NEVER);
+    }
+
+    /**
+     * Checks if a configuration can still reach a solution, stopping if asked to
+     *
+     * @param config    the configuration, it is not changed
+     * @param cancelled read during the search, the check stops once it is true
+     * @return true if it is solvable
+     * @throws CancellationException if the check was stopped
+     */
+    public boolean isSolvable(PackedConfiguration config, BooleanSupplier cancelled) {
+
+        long[] packed = new long[config.packedLength()];
+        config.pack(packed, 0);
+
+        return search(config.fromPacked(packed, 0), cancelled);
+    }
+
+    /**
+     * Checks if the configuration a move leads to can still reach a solution
+     *
+     * @param config the configuration, it is not changed
+     * @param move   a move given by {@link Configuration#forEachNeighbor(NeighborSink)}
+     * @return true if the neighbor is solvable
+     */
+    public boolean isSolvableAfter(PackedConfiguration config, int move) {
+        return isSolvableAfter(config, move, NEVER);
+    }
+
+    /**
+     * Checks if the configuration a move leads to can still reach a solution, stopping if
+     * asked to
+     *
+     * @param config    the configuration, it is not changed
+     * @param move      a move given by {@link Configuration#forEachNeighbor(NeighborSink)}
+     * @param cancelled read during the search, the check stops once it is true
+     * @return true if the neighbor is solvable
+     * @throws CancellationException if the check was stopped
+     */
+    public boolean isSolvableAfter(PackedConfiguration config, int move, BooleanSupplier cancelled) {
+
+        long[] packed = new long[config.packedLength()];
+        config.pack(packed, 0);
+
+        PackedConfiguration board = config.fromPacked(packed, 0);
+        board.makeMove(move);
+
+        return search(board, cancelled);
+    }
+
+    /**
+     * Remembers a configuration settled elsewhere, such as a step of a solution found by a solver
+     *
+     * @param config   the configuration
+     * @param solvable if it is solvable
+     */
+    public void remember(PackedConfiguration config, boolean solvable) {
+        put(PackedKey.of(config), solvable);
+    }
+
+    /**
+     * Gets the number of configurations settled so far
+     *
+     * @return configurations remembered
+     */
+    public int size() {
+        return known.size();
+    }
+
+    /**
+     * Sets the table that answers for the configurations it covers without a search
+     *
+     * @param positions the table, or null to always search
+     */
+    public void setTable(PositionTable positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Forgets every configuration, used when a different puzzle is loaded
+     */
+    public void clear() {
+        known.clear();
+    }
+
+    /**
+     * Remembers a configuration, clearing the memo first if it is full
+     */
+    private void put(PackedKey key, boolean solvable) {
+
+        if (known.size() >= limit) {
+            known.clear();
+        }
+
+        known.put(key, solvable);
+    }
+
+    /**
+     * Searches below a board in place, the board is left as it was. A stopped search
+     * remembers only the configurations it settled before it stopped.
+     *
+     * @return true if the board is solvable
+     */
+    private boolean search(PackedConfiguration board, BooleanSupplier cancelled) {
+
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Check cancelled");
+        }
+
+        PositionTable table = positions;
+
+        if (table != null && table.covers(board)) {
+            return table.isSolvable(board);
+        }
+
+        PackedKey key = PackedKey.of(board);
+
+        Boolean solvable = known.get(key);
+
+        if (solvable != null) {
+            return solvable;
+        }
+
+        boolean found = board.isSolution() || !board.isDeadEnd() && !board.forEachNeighbor(move -> {
+            board.makeMove(move);
+            boolean below = search(board, cancelled);
+            board.unmakeMove();
+            return !below;
+        });
+
+        put(key, found);
+
+        return found;
+    }
+}
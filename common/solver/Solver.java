@@ -1,9 +1,13 @@
 package puzzles.common.solver;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
 
 /**
  * A Solver using BFS
@@ -13,10 +17,47 @@ import java.util.Queue;
  */
 
 public class Solver {
+
+    /**
+     * Number of states the visited table starts with room for
+     */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
     private final Configuration initConfig;
 
+    /**
+     * Table looked up before searching, null if there is none
+     */
+    private final PositionTable positions;
+
     private Configuration nextStep;
 
+    /**
+     * The path found by the last solve, null until it is built from the moves
+     */
+    private List<Configuration> path;
+
+    /**
+     * The moves of the path, null if there is no solution or they have not been worked out
+     */
+    private int[] moves;
+
+    private StateTable table;
+
+    private PackedConfiguration board;
+
+    private long[] key;
+
+    private long totalConfigs;
+
+    private int parent;
+
+    private int goal;
+
+    private volatile SolverStats stats;
+
+    private volatile boolean cancelled;
+
     /**
      * Creates the Solver function with initial config
      *
@@ -24,22 +65,303 @@ public class Solver {
      */
     public Solver(Configuration initConfig) {
 
+        this(initConfig, null);
+
+    }
+
+    /**
+     * Creates a Solver that looks positions up in a table, configurations the table
+     * does not cover are searched with BFS
+     *
+     * @param initConfig stores the initial config
+     * @param positions  the table, or null to always search
+     */
+    public Solver(Configuration initConfig, PositionTable positions) {
+
         this.initConfig = initConfig;
 
+        this.positions = positions;
+
         this.nextStep = null;
 
+        this.path = List.of();
+
     }
 
     /**
      * Solves the configuration puzzle using BFS
+     * Packed configurations are kept in a {@link StateTable}, any other configuration
+     * falls back to a predecessor map.
+     *
+     * @param print whether to print the counters and the path
+     * @return the stats of the solve
+     * @throws CancellationException if {@link #cancel()} was called during the solve
+     */
+    public SolverStats solve(boolean print) {
+
+        SolverStats solveStats = new SolverStats("Solver");
+        this.stats = solveStats;
+
+        try {
+            if (initConfig instanceof PackedConfiguration packed && positions != null && positions.covers(packed)) {
+                solveFromTable(packed, print);
+            } else if (initConfig instanceof PackedConfiguration packed) {
+                solvePacked(packed, print);
+            } else {
+                solveUnpacked(print);
+            }
+        } finally {
+            solveStats.finish();
+        }
+
+        return solveStats;
+    }
+
+    /**
+     * Stops a running solve, the solve then throws a {@link CancellationException}.
+     * Safe to call from any thread.
      */
-    public void solve(boolean print) {
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Gets the stats of the current or last solve, they can be read while the solve runs
+     *
+     * @return the stats, null before the first solve
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Solves a packed configuration, the table is both the visited set and the queue
+     * because slots are handed out in the order states are found.
+     * A goal is caught as soon as it is made, the first goal made is the first one the
+     * queue would have reached.
+     */
+    private void solvePacked(PackedConfiguration init, boolean print) {
+
+        //create counters
+
+        totalConfigs = 1;
+
+        goal = init.isSolution() ? 0 : -1;
+
+        //create table with initConfig
+
+        table = new StateTable(init.packedLength(), INITIAL_CAPACITY);
+
+        key = new long[table.getWidth()];
+
+        init.packKey(key, 0);
+        table.insert(key, 0, StateTable.NO_PARENT);
+
+        //one board is reused for every config taken off the queue
+
+        board = init.fromPacked(key, 0);
+
+        //loop until goal is found, a level ends when the queue reaches the last
+        //config that was in the table when the level started
+
+        int levelStart = 0;
+
+        int levelEnd = 1;
+
+        long levelNanos = System.nanoTime();
+
+        for (parent = 0; goal == -1 && parent < table.size(); parent++) {
+
+            if (parent == levelEnd) {
+                long now = System.nanoTime();
+                stats.endLevel(now - levelNanos, parent - levelStart);
+                levelNanos = now;
+                levelStart = parent;
+                levelEnd = table.size();
+                updateStats();
+            } else if (parent % SolverStats.UPDATE_INTERVAL == 0) {
+                updateStats();
+            }
+
+            if (cancelled) {
+                throw new CancellationException("Solve cancelled");
+            }
+
+            table.copyState(parent, key, 0);
+
+            board.unpack(key, 0);
+
+            if (!board.isDeadEnd()) {
+                board.forEachNeighbor(this::addNeighbor);
+            }
+        }
+
+        stats.endLevel(System.nanoTime() - levelNanos, parent - levelStart);
+        updateStats();
+
+        //reads the moves back by walking the parent slots from the goal to the start,
+        //no configs are built unless the path is asked for
+
+        int[] solution = null;
+
+        if (goal != -1) {
+
+            int length = 0;
+
+            for (int slot = goal; table.getParent(slot) != StateTable.NO_PARENT; slot = table.getParent(slot)) {
+                length++;
+            }
+
+            int[] slots = new int[length];
+
+            for (int slot = goal; table.getParent(slot) != StateTable.NO_PARENT; slot = table.getParent(slot)) {
+                slots[--length] = slot;
+            }
+
+            solution = orientMoves(init, slots);
+        }
+
+        int uniqueConfigs = table.size();
+
+        table = null;
+        key = null;
+        board = null;
+
+        this.moves = solution;
+        this.path = null;
+
+        if (solution != null && solution.length > 0) {
+            nextStep = init.applyMove(solution[0]);
+        }
+
+        if (print) {
+            printResult(getPath(), totalConfigs, uniqueConfigs);
+        }
+    }
+
+    /**
+     * Turns the moves stored for a path of slots into moves from the initial config.
+     * A stored move was made on the parent as it was unpacked from its key, which may be a
+     * mirror image of the config the path actually reached, so each move is checked on a
+     * board that follows the path and looked for again among its neighbors if it is wrong.
+     *
+     * @param init  the initial config
+     * @param slots slots of the path after the start, in order
+     * @return the moves from the initial config
+     */
+    private int[] orientMoves(PackedConfiguration init, int[] slots) {
+
+        PackedConfiguration current = copy(init);
+
+        long[] target = new long[table.getWidth()];
+
+        long[] scratch = new long[table.getWidth()];
+
+        int[] solution = new int[slots.length];
+
+        for (int step = 0; step < slots.length; step++) {
+            table.copyState(slots[step], target, 0);
+            solution[step] = follow(current, target, table.getMove(slots[step]), scratch);
+        }
+
+        return solution;
+    }
+
+    /**
+     * Walks a path out of the table, each step is the first neighbor the table says is
+     * solvable. No search is needed, so this only costs a lookup per neighbor tried.
+     */
+    private void solveFromTable(PackedConfiguration init, boolean print) {
+
+        long generated = 0;
+
+        List<Configuration> path = new ArrayList<>();
+
+        if (positions.isSolvable(init)) {
+
+            Configuration current = init;
+            path.add(current);
+
+            while (!current.isSolution()) {
+
+                if (cancelled) {
+                    throw new CancellationException("Solve cancelled");
+                }
+
+                Configuration next = null;
+
+                for (Configuration neighbor : current.getNeighbors()) {
+
+                    generated++;
+
+                    if (positions.isSolvable((PackedConfiguration) neighbor)) {
+                        next = neighbor;
+                        break;
+                    }
+                }
+
+                if (next == null) {
+                    throw new IllegalStateException("Table has a solvable config with no solvable neighbor");
+                }
+
+                current = next;
+                path.add(current);
+            }
+        }
+
+        stats.update(Math.max(0, path.size() - 1), generated, 0, generated + 1, 0);
+
+        finish(path, generated + 1, (int) generated + 1, print);
+    }
+
+    /**
+     * Copies the counters of the packed search to the stats
+     */
+    private void updateStats() {
+
+        long generated = totalConfigs - 1;
+
+        stats.update(parent, generated, generated - (table.size() - 1), table.size(), table.size() - parent);
+        stats.updateTable(table.getLoadFactor(), table.getBytes());
+    }
+
+    /**
+     * Adds the neighbor a move leads to if it has not been seen yet,
+     * the move is made on the shared board and taken back once the neighbor is packed
+     *
+     * @return false once a goal has been found
+     */
+    private boolean addNeighbor(int move) {
+
+        //update totalConfigs
+        totalConfigs++;
+
+        board.makeMove(move);
+        board.packKey(key, 0);
+        boolean solution = board.isSolution();
+        board.unmakeMove();
+
+        int slot = table.insert(key, 0, parent, move);
+
+        if (slot != -1 && solution) {
+            goal = slot;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Solves any configuration using a predecessor map
+     */
+    private void solveUnpacked(boolean print) {
 
         //create counters
 
         int totalConfigs = 1;
 
-        int uniqueConfigs;
+        int expanded = 0;
+
+        int peakFrontier = 1;
 
         Configuration goal = null;
 
@@ -59,10 +381,18 @@ public class Solver {
 
             Configuration current = queue.remove();
 
+            if (cancelled) {
+                throw new CancellationException("Solve cancelled");
+            }
+
             if (current.isSolution()) {
                 goal = current;
                 break;
             }
+            if (current.isDeadEnd()) {
+                continue;
+            }
+            expanded++;
             for (Configuration neighbor : current.getNeighbors()) {
                 //update totalConfigs
                 totalConfigs++;
@@ -71,47 +401,186 @@ public class Solver {
                     queue.add(neighbor);
                 }
             }
+            peakFrontier = Math.max(peakFrontier, queue.size());
         }
 
-        //set unique configs to size of predecessor map and print both counters
+        stats.update(expanded, totalConfigs - 1, totalConfigs - predecessors.size(), predecessors.size(), peakFrontier);
 
-        uniqueConfigs = predecessors.size();
+        //creates path if there is one
 
-        //creates path and prints it out if there is one
+        List<Configuration> path = new ArrayList<>();
 
-        List<Configuration> path = new LinkedList<>();
+        Configuration currConfig = goal;
+        while (currConfig != null) {
+            path.add(currConfig);
+            currConfig = predecessors.get(currConfig);
+        }
 
-        if (goal != null) {
-            Configuration currConfig = goal;
-            while (currConfig != null) {
-                path.add(0, currConfig);
-                currConfig = predecessors.get(currConfig);
-            }
+        Collections.reverse(path);
+
+        finish(path, totalConfigs, predecessors.size(), print);
+    }
+
+    /**
+     * Sets the next step and prints the counters and path if asked to
+     *
+     * @param path          the path from the start to the goal, empty if there is no solution
+     * @param totalConfigs  number of configs generated
+     * @param uniqueConfigs number of distinct configs seen
+     * @param print         whether to print
+     */
+    private void finish(List<Configuration> path, long totalConfigs, int uniqueConfigs, boolean print) {
+
+        this.path = path;
+
+        this.moves = null;
+
+        if (path.size() > 1) {
 
             //sets the next step
 
             nextStep = path.get(1);
+        }
 
-            //checks if you want to print or not
+        //checks if you want to print or not
 
-            if(print){
+        if (print) {
+            printResult(path, totalConfigs, uniqueConfigs);
+        }
+    }
 
-                System.out.println("Total configs: " + totalConfigs);
+    /**
+     * Turns a path of keys into the real configurations reached from the start.
+     * A key may stand for a mirror image of the configuration that was actually
+     * reached, so each step is matched against the neighbors of the previous real step.
+     *
+     * @param init the initial config
+     * @param keys the keys of the path from the start to the goal
+     * @return the configurations of the path, empty if keys is empty
+     */
+    static List<Configuration> orientPath(PackedConfiguration init, List<long[]> keys) {
 
-                System.out.println("Unique configs: " + uniqueConfigs);
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-                for (int i = 0; i < path.size(); i++) {
-                    System.out.println("Step " + i + ": " + path.get(i));
-                }
-            }
+        PackedConfiguration current = copy(init);
+
+        long[] scratch = new long[init.packedLength()];
+
+        int[] moves = new int[keys.size() - 1];
+
+        for (int step = 1; step < keys.size(); step++) {
+            moves[step - 1] = follow(current, keys.get(step), StateTable.NO_MOVE, scratch);
+        }
+
+        return replay(init, moves);
+    }
+
+    /**
+     * Finds the move from a board to the neighbor with a key and makes it on the board
+     *
+     * @param board   the board, searched in place
+     * @param target  key of the neighbor
+     * @param hint    a move to try first, or {@link StateTable#NO_MOVE}
+     * @param scratch room for one key
+     * @return the move
+     * @throws IllegalStateException if no neighbor has the key
+     */
+    private static int follow(PackedConfiguration board, long[] target, int hint, long[] scratch) {
+
+        int[] found = {hint};
+
+        boolean hinted = hint != StateTable.NO_MOVE && !board.forEachNeighbor(move -> move != hint)
+                && leadsTo(board, hint, target, scratch);
+
+        if (!hinted && board.forEachNeighbor(move -> {
+            found[0] = move;
+            return !leadsTo(board, move, target, scratch);
+        })) {
+            throw new IllegalStateException("No move leads to the next step of the path");
+        }
 
-        } else if (print) {
-            System.out.println("Total configs: " + totalConfigs);
+        board.makeMove(found[0]);
 
-            System.out.println("Unique configs: " + uniqueConfigs);
+        return found[0];
+    }
+
+    /**
+     * Checks if a move on a board leads to the config with a key
+     */
+    private static boolean leadsTo(PackedConfiguration board, int move, long[] target, long[] scratch) {
+
+        board.makeMove(move);
+        board.packKey(scratch, 0);
+        board.unmakeMove();
+
+        return Arrays.equals(scratch, target);
+    }
+
+    /**
+     * Builds the configs a list of moves passes through
+     *
+     * @param init  the initial config
+     * @param moves the moves in order
+     * @return the initial config followed by the config after each move
+     */
+    static List<Configuration> replay(Configuration init, int[] moves) {
+
+        List<Configuration> path = new ArrayList<>();
+
+        Configuration current = init;
+        path.add(current);
+
+        for (int move : moves) {
+            current = current.applyMove(move);
+            path.add(current);
+        }
+
+        return path;
+    }
+
+    private static PackedConfiguration copy(PackedConfiguration config) {
+
+        long[] packed = new long[config.packedLength()];
+        config.pack(packed, 0);
+
+        return config.fromPacked(packed, 0);
+    }
+
+    /**
+     * Prints the counters followed by the path or "No solution"
+     *
+     * @param path          the path from the start to the goal, empty if there is no solution
+     * @param totalConfigs  number of configs generated
+     * @param uniqueConfigs number of distinct configs seen
+     */
+    static void printResult(List<Configuration> path, long totalConfigs, int uniqueConfigs) {
+        printResult(path, totalConfigs, "Unique configs", uniqueConfigs);
+    }
+
+    /**
+     * Prints the counters followed by the path or "No solution", for solvers that count
+     * something other than the distinct configs seen
+     *
+     * @param path         the path from the start to the goal, empty if there is no solution
+     * @param totalConfigs number of configs generated
+     * @param label        name of the second counter
+     * @param count        the second counter
+     */
+    static void printResult(List<Configuration> path, long totalConfigs, String label, long count) {
+
+        System.out.println("Total configs: " + totalConfigs);
 
+        System.out.println(label + ": " + count);
+
+        if (path.isEmpty()) {
             System.out.println("No solution");
         }
+
+        for (int i = 0; i < path.size(); i++) {
+            System.out.println("Step " + i + ": " + path.get(i));
+        }
     }
 
     /**
@@ -122,4 +591,62 @@ public class Solver {
 
         return nextStep;
     }
+
+    /**
+     * Gets the path found by the last solve, building its configs from the moves the
+     * first time it is asked for
+     *
+     * @return the configs from the initial config to the goal, empty if there is no solution
+     */
+    public List<Configuration> getPath() {
+
+        if (path == null) {
+            path = moves == null ? List.of() : replay(initConfig, moves);
+        }
+        return path;
+    }
+
+    /**
+     * Gets the moves of the path found by the last solve
+     *
+     * @return each move as given by {@link Configuration#forEachNeighbor(NeighborSink)} of the
+     * config before it, or null if there is no solution
+     */
+    public int[] getMoves() {
+
+        if (moves == null && !getPath().isEmpty()) {
+            moves = movesOf(path);
+        }
+        return moves == null ? null : moves.clone();
+    }
+
+    /**
+     * Gets the moves between the configs of a path, such as one found by a solver
+     *
+     * @param path configs where each is a neighbor of the one before
+     * @return each move as given by {@link Configuration#forEachNeighbor(NeighborSink)} of the
+     * config before it
+     * @throws IllegalArgumentException if a config of the path is not a neighbor of the one before
+     */
+    public static int[] movesOf(List<? extends Configuration> path) {
+
+        int[] moves = new int[Math.max(0, path.size() - 1)];
+
+        for (int step = 0; step < moves.length; step++) {
+
+            Configuration current = path.get(step);
+            Configuration next = path.get(step + 1);
+
+            int index = step;
+
+            if (current.forEachNeighbor(move -> {
+                moves[index] = move;
+                return !current.applyMove(move).equals(next);
+            })) {
+                throw new IllegalArgumentException("Step " + (step + 1) + " is not a neighbor of step " + step);
+            }
+        }
+
+        return moves;
+    }
 }
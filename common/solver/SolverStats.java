@@ -0,0 +1,234 @@
+package puzzles.common.solver;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters of one solve, returned by the solvers once they finish.
+ * <p>
+ * A solve publishes its stats over JMX under {@code puzzles.common.solver:type=SolverStats}
+ * while it runs and removes them when it ends. Solvers keep their own counters in the
+ * search loop and copy them here at the end of each level and every few thousand
+ * expansions, so watching a solve costs the search almost nothing.
+ *
+ * @author Nick Creeley
+ */
+public class SolverStats implements SolverStatsMXBean {
+
+    /**
+     * Expansions between updates of the stats inside a level
+     */
+    static final int UPDATE_INTERVAL = 1 << 14;
+
+    private static final AtomicInteger SOLVES = new AtomicInteger();
+
+    private final String solver;
+
+    private final long startNanos;
+
+    private final List<Long> levelNanos = new ArrayList<>();
+
+    private final List<Long> levelNodes = new ArrayList<>();
+
+    private volatile long endNanos;
+
+    private volatile long nodesExpanded;
+
+    private volatile long nodesGenerated;
+
+    private volatile long duplicates;
+
+    private volatile long visitedSize;
+
+    private volatile long peakFrontier;
+
+    private volatile double loadFactor;
+
+    private volatile long visitedBytes;
+
+    private ObjectName name;
+
+    /**
+     * Starts the stats of a solve and publishes them over JMX
+     *
+     * @param solver name of the solver running the solve
+     */
+    SolverStats(String solver) {
+
+        this.solver = solver;
+
+        this.startNanos = System.nanoTime();
+
+        this.endNanos = -1;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("puzzles.common.solver:type=SolverStats,name="
+                    + solver + "-" + SOLVES.incrementAndGet());
+            server.registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException | SecurityException e) {
+            //the stats are still returned by the solve
+            this.name = null;
+        }
+    }
+
+    /**
+     * Copies the solver's counters
+     *
+     * @param expanded  configurations expanded
+     * @param generated  neighbors generated
+     * @param duplicates neighbors that had already been seen
+     * @param visited    configurations in the visited table
+     * @param frontier   configurations waiting to be expanded
+     */
+    void update(long expanded, long generated, long duplicates, long visited, long frontier) {
+
+        this.nodesExpanded = expanded;
+        this.nodesGenerated = generated;
+        this.duplicates = duplicates;
+        this.visitedSize = visited;
+
+        if (frontier > peakFrontier) {
+            this.peakFrontier = frontier;
+        }
+    }
+
+    /**
+     * Copies the fill of the visited table
+     *
+     * @param loadFactor share of the hash index in use
+     * @param bytes      bytes held by the table
+     */
+    void updateTable(double loadFactor, long bytes) {
+        this.loadFactor = loadFactor;
+        this.visitedBytes = bytes;
+    }
+
+    /**
+     * Records a finished level
+     *
+     * @param nanos wall time of the level
+     * @param nodes configurations expanded on the level
+     */
+    synchronized void endLevel(long nanos, long nodes) {
+        levelNanos.add(nanos);
+        levelNodes.add(nodes);
+    }
+
+    /**
+     * Marks the solve as finished and removes it from JMX
+     */
+    void finish() {
+
+        this.endNanos = System.nanoTime();
+
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                //already gone
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public String getSolver() {
+        return solver;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return endNanos == -1;
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    @Override
+    public long getNodesGenerated() {
+        return nodesGenerated;
+    }
+
+    @Override
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public long getPeakFrontier() {
+        return peakFrontier;
+    }
+
+    @Override
+    public long getVisitedSize() {
+        return visitedSize;
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    @Override
+    public long getVisitedBytes() {
+        return visitedBytes;
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+
+        long nanos = getWallTimeNanos();
+
+        return nanos == 0 ? 0 : nodesExpanded * 1e9 / nanos;
+    }
+
+    @Override
+    public long getWallTimeMillis() {
+        return getWallTimeNanos() / 1_000_000;
+    }
+
+    @Override
+    public synchronized long[] getLevelTimesMillis() {
+
+        long[] millis = new long[levelNanos.size()];
+
+        for (int level = 0; level < millis.length; level++) {
+            millis[level] = levelNanos.get(level) / 1_000_000;
+        }
+        return millis;
+    }
+
+    @Override
+    public synchronized long[] getLevelNodes() {
+        return levelNodes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Gets the wall time of the solve so far
+     *
+     * @return nanoseconds since the solve started, or until it finished
+     */
+    public long getWallTimeNanos() {
+
+        long end = endNanos;
+
+        return (end == -1 ? System.nanoTime() : end) - startNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: expanded %d, generated %d, duplicates %d, peak frontier %d, "
+                        + "visited %d (load %.2f, %d bytes), %.0f nodes/s, %d ms",
+                solver, nodesExpanded, nodesGenerated, duplicates, peakFrontier,
+                visitedSize, loadFactor, visitedBytes, getNodesPerSecond(), getWallTimeMillis());
+    }
+}
@@ -0,0 +1,75 @@
+package puzzles.common.solver;
+
+/**
+ * The JMX view of {@link SolverStats}, so a running solve can be watched from JConsole
+ * or any other JMX client.
+ *
+ * @author Nick Creeley
+ */
+public interface SolverStatsMXBean {
+
+    /**
+     * @return name of the solver running the solve
+     */
+    String getSolver();
+
+    /**
+     * @return true until the solve has finished
+     */
+    boolean isRunning();
+
+    /**
+     * @return configurations whose neighbors have been generated
+     */
+    long getNodesExpanded();
+
+    /**
+     * @return neighbors generated, duplicates included
+     */
+    long getNodesGenerated();
+
+    /**
+     * @return neighbors that had already been seen
+     */
+    long getDuplicates();
+
+    /**
+     * @return most configurations waiting to be expanded at once
+     */
+    long getPeakFrontier();
+
+    /**
+     * @return configurations in the visited table
+     */
+    long getVisitedSize();
+
+    /**
+     * @return share of the visited table's hash index in use
+     */
+    double getLoadFactor();
+
+    /**
+     * @return bytes held by the visited table
+     */
+    long getVisitedBytes();
+
+    /**
+     * @return configurations expanded per second of wall time
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return wall time of the solve so far
+     */
+    long getWallTimeMillis();
+
+    /**
+     * @return wall time of each finished search level, the histogram of where a solve spends its time
+     */
+    long[] getLevelTimesMillis();
+
+    /**
+     * @return configurations expanded on each finished search level
+     */
+    long[] getLevelNodes();
+}
@@ -0,0 +1,282 @@
+package puzzles.common.solver;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table of packed configurations used as the visited set
+ * and predecessor map of the BFS solver.
+ * <p>
+ * States are stored back to back in one long array and get slot numbers in the order
+ * they are inserted, so the table is also the BFS queue. The parent of a state is kept
+ * as the slot number of the parent in a parallel int array, and the move that led to it
+ * from the parent in another, so a path can be read back as moves without building any
+ * configurations.
+ * <p>
+ * The hash index is an int array of slot numbers probed linearly. It is kept at most
+ * half full ({@link #LOAD_FACTOR}) and doubles when an insert would go over that.
+ * The state, parent and move arrays grow by half whenever they run out of room.
+ *
+ * @author Nick Creeley
+ */
+public class StateTable {
+
+    /**
+     * Parent slot of a state that has no parent
+     */
+    public static final int NO_PARENT = -1;
+
+    /**
+     * Move of a state that was inserted without one
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Most the hash index is allowed to fill before it is doubled
+     */
+    public static final double LOAD_FACTOR = 0.5;
+
+    /**
+     * Marks an unused entry of the hash index
+     */
+    private static final int FREE = -1;
+
+    private final int width;
+
+    private long[] states;
+
+    private int[] parents;
+
+    private int[] moves;
+
+    private int[] index;
+
+    private int mask;
+
+    private int size;
+
+    /**
+     * Creates an empty table
+     *
+     * @param width    number of longs in each packed state
+     * @param capacity number of states expected, the table grows past it if needed
+     */
+    public StateTable(int width, int capacity) {
+
+        this.width = width;
+
+        capacity = Math.max(capacity, 16);
+
+        this.states = new long[capacity * width];
+        this.parents = new int[capacity];
+        this.moves = new int[capacity];
+
+        int buckets = Integer.highestOneBit((int) Math.ceil(capacity / LOAD_FACTOR) - 1) << 1;
+        this.index = new int[buckets];
+        Arrays.fill(index, FREE);
+        this.mask = buckets - 1;
+
+        this.size = 0;
+    }
+
+    /**
+     * Adds a state if it is not already in the table
+     *
+     * @param key    array holding the packed state
+     * @param offset index of the first word of the state
+     * @param parent slot of the parent state or {@link #NO_PARENT}
+     * @return the slot of the new state, or -1 if the state was already there
+     */
+    public int insert(long[] key, int offset, int parent) {
+        return insert(key, offset, parent, NO_MOVE);
+    }
+
+    /**
+     * Adds a state if it is not already in the table, with the move that led to it
+     *
+     * @param key    array holding the packed state
+     * @param offset index of the first word of the state
+     * @param parent slot of the parent state or {@link #NO_PARENT}
+     * @param move   the move from the parent as it was unpacked from the table, or {@link #NO_MOVE}
+     * @return the slot of the new state, or -1 if the state was already there
+     */
+    public int insert(long[] key, int offset, int parent, int move) {
+
+        if (size + 1 > index.length * LOAD_FACTOR) {
+            growIndex();
+        }
+
+        int bucket = hash(key, offset, width) & mask;
+
+        while (index[bucket] != FREE) {
+            if (matches(index[bucket], key, offset)) {
+                return -1;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        if (size == parents.length) {
+            int capacity = size + (size >> 1);
+            states = Arrays.copyOf(states, capacity * width);
+            parents = Arrays.copyOf(parents, capacity);
+            moves = Arrays.copyOf(moves, capacity);
+        }
+
+        int slot = size++;
+        System.arraycopy(key, offset, states, slot * width, width);
+        parents[slot] = parent;
+        moves[slot] = move;
+        index[bucket] = slot;
+
+        return slot;
+    }
+
+    /**
+     * Finds the slot of a state
+     *
+     * @param key    array holding the packed state
+     * @param offset index of the first word of the state
+     * @return the slot of the state, or -1 if it is not in the table
+     */
+    public int find(long[] key, int offset) {
+
+        int bucket = hash(key, offset, width) & mask;
+
+        while (index[bucket] != FREE) {
+            if (matches(index[bucket], key, offset)) {
+                return index[bucket];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Copies the packed state in a slot
+     *
+     * @param slot   slot of the state
+     * @param dest   array the state is copied to
+     * @param offset index of the first word written
+     */
+    public void copyState(int slot, long[] dest, int offset) {
+        System.arraycopy(states, slot * width, dest, offset, width);
+    }
+
+    /**
+     * Gets the parent of a state
+     *
+     * @param slot slot of the state
+     * @return slot of the parent or {@link #NO_PARENT}
+     */
+    public int getParent(int slot) {
+        return parents[slot];
+    }
+
+    /**
+     * Gets the move that led to a state from its parent
+     *
+     * @param slot slot of the state
+     * @return the move, or {@link #NO_MOVE}
+     */
+    public int getMove(int slot) {
+        return moves[slot];
+    }
+
+    /**
+     * Gets the number of states in the table
+     *
+     * @return number of states
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the share of the hash index in use
+     *
+     * @return size divided by the number of buckets
+     */
+    public double getLoadFactor() {
+        return (double) size / index.length;
+    }
+
+    /**
+     * Gets the bytes held by the table's arrays
+     *
+     * @return bytes of the states, parents, moves and hash index
+     */
+    public long getBytes() {
+        return (long) states.length * Long.BYTES + (long) parents.length * Integer.BYTES
+                + (long) moves.length * Integer.BYTES + (long) index.length * Integer.BYTES;
+    }
+
+    /**
+     * Gets the number of longs in each packed state
+     *
+     * @return words per state
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Checks if the state in a slot equals a packed state
+     */
+    private boolean matches(int slot, long[] key, int offset) {
+
+        int start = slot * width;
+
+        for (int word = 0; word < width; word++) {
+            if (states[start + word] != key[offset + word]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the hash index and reinserts every slot
+     */
+    private void growIndex() {
+
+        int[] grown = new int[index.length << 1];
+        Arrays.fill(grown, FREE);
+        int grownMask = grown.length - 1;
+
+        for (int slot = 0; slot < size; slot++) {
+
+            int bucket = hash(states, slot * width, width) & grownMask;
+
+            while (grown[bucket] != FREE) {
+                bucket = (bucket + 1) & grownMask;
+            }
+            grown[bucket] = slot;
+        }
+
+        this.index = grown;
+        this.mask = grownMask;
+    }
+
+    /**
+     * Hashes a packed state, the words are mixed so that nearby boards spread out
+     * over both the low and the high bits
+     *
+     * @param key    array holding the packed state
+     * @param offset index of the first word of the state
+     * @param width  number of words in the state
+     * @return the hash
+     */
+    static int hash(long[] key, int offset, int width) {
+
+        long hash = 0;
+
+        for (int word = 0; word < width; word++) {
+            hash = (hash ^ key[offset + word]) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+
+        hash ^= hash >>> 32;
+
+        return (int) hash;
+    }
+}
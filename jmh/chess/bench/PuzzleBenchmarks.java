@@ -0,0 +1,106 @@
+package puzzles.chess.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import puzzles.chess.model.ChessConfig;
+import puzzles.chess.model.ChessModel;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for move generation, hashing, the BFS solver and hints on every
+ * data/chess puzzle. Run from the project directory so the puzzles can be found:
+ * <p>
+ * mvn -P jmh package exec:exec
+ * <p>
+ * which runs target/benchmarks.jar with -prof gc, so each result comes with the bytes
+ * allocated per operation (gc.alloc.rate.norm) and per second (gc.alloc.rate).
+ *
+ * @author Nick Creeley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleBenchmarks {
+
+    /**
+     * Name of the puzzle file in data/chess, without .txt
+     */
+    @Param({"chess-0", "chess-1", "chess-2", "chess-3", "chess-4",
+            "chess-5", "chess-6", "chess-7", "chess-8", "chess-9"})
+    public String puzzle;
+
+    private String path;
+
+    private ChessConfig config;
+
+    private ChessConfig copy;
+
+    @Setup
+    public void setup() throws IOException {
+
+        path = "data" + File.separator + "chess" + File.separator + puzzle + ".txt";
+
+        config = new ChessConfig(path);
+        copy = new ChessConfig(path);
+    }
+
+    @Benchmark
+    public Collection<Configuration> getNeighbors() {
+        return config.getNeighbors();
+    }
+
+    @Benchmark
+    public void forEachNeighbor(Blackhole sink) {
+        config.forEachNeighbor(move -> {
+            sink.consume(move);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public int configHashCode() {
+        return config.hashCode();
+    }
+
+    @Benchmark
+    public boolean configEquals() {
+        return config.equals(copy);
+    }
+
+    @Benchmark
+    public Configuration solve() throws IOException {
+
+        Solver solver = new Solver(new ChessConfig(path));
+        solver.solve(false);
+
+        return solver.getNextStep();
+    }
+
+    @Benchmark
+    public ChessModel hint() throws IOException {
+
+        ChessModel model = new ChessModel(path);
+        model.hint();
+
+        return model;
+    }
+}